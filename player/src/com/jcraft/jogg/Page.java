@@ -118,16 +118,25 @@ public class Page{
     return copy(new Page());
   }
 
+  // storage owned by a page that copies were made into; reused by the
+  // next copy into the same page
+  private byte[] header_copy;
+  private byte[] body_copy;
+
   public Page copy(Page p){
-    byte[] tmp=new byte[header_len];
-    System.arraycopy(header_base, header, tmp, 0, header_len);
+    if(p.header_copy==null||p.header_copy.length<header_len){
+      p.header_copy=new byte[header_len];
+    }
+    System.arraycopy(header_base, header, p.header_copy, 0, header_len);
     p.header_len=header_len;
-    p.header_base=tmp;
+    p.header_base=p.header_copy;
     p.header=0;
-    tmp=new byte[body_len];
-    System.arraycopy(body_base, body, tmp, 0, body_len);
+    if(p.body_copy==null||p.body_copy.length<body_len){
+      p.body_copy=new byte[body_len];
+    }
+    System.arraycopy(body_base, body, p.body_copy, 0, body_len);
     p.body_len=body_len;
-    p.body_base=tmp;
+    p.body_base=p.body_copy;
     p.body=0;
     return p;
   }
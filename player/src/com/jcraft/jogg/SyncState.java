@@ -252,6 +252,13 @@ public class SyncState{
     }
   }
 
+  // bytes written to the buffer that pageout hasn't returned or skipped
+  // yet; the last page returned ends this many bytes before the end of
+  // what was written
+  public int unread(){
+    return (fill-returned);
+  }
+
   // clear things to an initial state.  Good to call, eg, before seeking
   public int reset(){
     fill=0;
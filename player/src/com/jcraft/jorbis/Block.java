@@ -31,6 +31,8 @@ import com.jcraft.jogg.*;
 public class Block{
   ///necessary stream state for linking to the framing abstraction
   float[][] pcm=new float[0][]; // this is a pointer into local storage
+  float[] window; // not yet applied to pcm; see DspState.synthesis_blockin
+  boolean[] silent=new boolean[0]; // channels known to be all zero
   Buffer opb=new Buffer();
 
   int lW;
@@ -109,16 +111,14 @@ public class Block{
     pcmend=vi.blocksizes[W];
     if(pcm.length<vi.channels){
       pcm=new float[vi.channels][];
+      silent=new boolean[vi.channels];
     }
+    // no need to clear reused storage; the mapping clears the half it
+    // decodes into and the inverse MDCT overwrites all of it
     for(int i=0; i<vi.channels; i++){
       if(pcm[i]==null||pcm[i].length<pcmend){
         pcm[i]=new float[pcmend];
       }
-      else{
-        for(int j=0; j<pcmend; j++){
-          pcm[i][j]=0;
-        }
-      }
     }
 
     // unpack_header enforces range checking
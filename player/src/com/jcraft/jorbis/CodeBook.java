@@ -34,6 +34,8 @@ class CodeBook{
   StaticCodeBook c=new StaticCodeBook();
 
   float[] valuelist; // list of dim*entries actual entry values
+  float[] latticevals; // compact lattice books: the distinct values
+  byte[] latticemap; // compact lattice books: dim*entries value indexes
   int[] codelist; // list of bitstream codewords for each entry
   DecodeAux decode_tree;
 
@@ -60,6 +62,7 @@ class CodeBook{
   // returns entry number and *modifies a* to the quantization value
   int errorv(float[] a){
     int best=best(a, 1);
+    float[] valuelist=values();
     for(int k=0; k<dim; k++){
       a[k]=valuelist[best*dim+k];
     }
@@ -68,6 +71,7 @@ class CodeBook{
 
   // returns the number of bits and *modifies a* to the quantization value
   int encodev(int best, float[] a, Buffer b){
+    float[] valuelist=values();
     for(int k=0; k<dim; k++){
       a[k]=valuelist[best*dim+k];
     }
@@ -98,6 +102,14 @@ class CodeBook{
         return (-1);
       t[i]=entry*dim;
     }
+    if(latticemap!=null){
+      for(i=0, o=0; i<dim; i++, o+=step){
+        for(j=0; j<step; j++){
+          a[offset+o+j]+=latticevals[latticemap[t[j]+i]&0xff];
+        }
+      }
+      return (0);
+    }
     for(i=0, o=0; i<dim; i++, o+=step){
       for(j=0; j<step; j++){
         a[offset+o+j]+=valuelist[t[j]+i];
@@ -111,7 +123,18 @@ class CodeBook{
     int i, j, entry;
     int t;
 
-    if(dim>8){
+    if(latticemap!=null){
+      for(i=0; i<n;){
+        entry=decode(b);
+        if(entry==-1)
+          return (-1);
+        t=entry*dim;
+        for(j=0; j<dim; j++){
+          a[offset+(i++)]+=latticevals[latticemap[t+j]&0xff];
+        }
+      }
+    }
+    else if(dim>8){
       for(i=0; i<n;){
         entry=decode(b);
         if(entry==-1)
@@ -163,8 +186,15 @@ class CodeBook{
       if(entry==-1)
         return (-1);
       t=entry*dim;
-      for(j=0; j<dim;){
-        a[offset+i++]=valuelist[t+(j++)];
+      if(latticemap!=null){
+        for(j=0; j<dim; j++){
+          a[offset+i++]=latticevals[latticemap[t+j]&0xff];
+        }
+      }
+      else{
+        for(j=0; j<dim;){
+          a[offset+i++]=valuelist[t+(j++)];
+        }
       }
     }
     return (0);
@@ -180,11 +210,22 @@ class CodeBook{
         return (-1);
 
       int t=entry*dim;
-      for(j=0; j<dim; j++){
-        a[chptr++][i]+=valuelist[t+j];
-        if(chptr==ch){
-          chptr=0;
-          i++;
+      if(latticemap!=null){
+        for(j=0; j<dim; j++){
+          a[chptr++][i]+=latticevals[latticemap[t+j]&0xff];
+          if(chptr==ch){
+            chptr=0;
+            i++;
+          }
+        }
+      }
+      else{
+        for(j=0; j<dim; j++){
+          a[chptr++][i]+=valuelist[t+j];
+          if(chptr==ch){
+            chptr=0;
+            i++;
+          }
         }
       }
     }
@@ -240,6 +281,11 @@ class CodeBook{
     int entry=decode(b);
     if(entry==-1)
       return (-1);
+    float[] valuelist=this.valuelist;
+    if(latticemap!=null){
+      valuelist=entry_values(entry);
+      entry=0;
+    }
     switch(addmul){
       case -1:
         for(int i=0, o=0; i<dim; i++, o+=step)
@@ -265,6 +311,7 @@ class CodeBook{
       int besti=-1;
       float best=0.f;
       int e=0;
+      float[] valuelist=values();
       for(int i=0; i<entries; i++){
         if(c.lengthlist[i]>0){
           float _this=dist(dim, valuelist, e, a, step);
@@ -282,6 +329,7 @@ class CodeBook{
   // returns the entry number and *modifies a* to the remainder value
   int besterror(float[] a, int step, int addmul){
     int best=best(a, step);
+    float[] valuelist=values();
     switch(addmul){
       case 0:
         for(int i=0, o=0; i<dim; i++, o+=step)
@@ -305,6 +353,28 @@ class CodeBook{
   void clear(){
   }
 
+  // the expanded dim*entries list; only the encode side needs it for
+  // compact lattice books, so it is built on first use
+  private float[] values(){
+    if(valuelist==null&&latticemap!=null){
+      valuelist=c.unquantize();
+    }
+    return (valuelist);
+  }
+
+  private float[] vector=null;
+
+  // vector of one compact lattice entry, for the rarely used decodevs
+  private float[] entry_values(int e){
+    if(vector==null){
+      vector=new float[dim];
+    }
+    for(int k=0; k<dim; k++){
+      vector[k]=latticevals[latticemap[e*dim+k]&0xff];
+    }
+    return (vector);
+  }
+
   private static float dist(int el, float[] ref, int index, float[] b, int step){
     float acc=(float)0.;
     for(int i=0; i<el; i++){
@@ -318,7 +388,13 @@ class CodeBook{
     c=s;
     entries=s.entries;
     dim=s.dim;
-    valuelist=s.unquantize();
+    if(s.compact_lattice()){
+      latticevals=s.lattice_values();
+      latticemap=s.lattice_map();
+    }
+    else{
+      valuelist=s.unquantize();
+    }
 
     decode_tree=make_decode_tree();
     if(decode_tree==null){
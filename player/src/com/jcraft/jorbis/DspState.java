@@ -26,19 +26,33 @@
 
 package com.jcraft.jorbis;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 public class DspState{
   static final float M_PI=3.1415926539f;
   static final int VI_TRANSFORMB=1;
   static final int VI_WINDOWB=1;
 
+  // inverse MDCT engines, see synthesis_init(Info, int)
+  public static final int MDCT_REFERENCE=0;
+  public static final int MDCT_FFT=1;
+
   int analysisp;
   Info vi;
   int modebits;
+  int mdct=MDCT_REFERENCE;
 
+  // pcm is a ring of pcm_storage samples per channel, a power of two;
+  // the positions below grow without bound and are masked on access
   float[][] pcm;
   int pcm_storage;
   int pcm_current;
   int pcm_returned;
+  // per channel, pcm is known to be zero from this position up to
+  // pcm_current, and in ring slots one lap further on
+  int[] pcm_zero;
 
   float[] multipliers;
   int envelope_storage;
@@ -58,6 +72,7 @@ public class DspState{
   long time_bits;
   long floor_bits;
   long res_bits;
+  long silent_blocks;
 
   // local lookup storage
   float[][][][][] window; // block, leadin, leadout, type
@@ -93,7 +108,28 @@ public class DspState{
     window[1][1][1]=new float[2][];
   }
 
+  // window shapes only depend on the block and slope sizes, so each
+  // one is computed once and shared read-only by every decoder
+  private static final Map<Long, float[]> window_cache=
+      new HashMap<Long, float[]>();
+
   static float[] window(int type, int window, int left, int right){
+    if(type!=0){
+      return (make_window(type, window, left, right));
+    }
+    Long key=Long.valueOf(((long)window<<32)|((long)left<<16)|right);
+    synchronized(window_cache){
+      float[] ret=window_cache.get(key);
+      if(ret==null){
+        ret=make_window(type, window, left, right);
+        window_cache.put(key, ret);
+      }
+      return (ret);
+    }
+  }
+
+  private static float[] make_window(int type, int window, int left,
+      int right){
     float[] ret=new float[window];
     switch(type){
       case 0:
@@ -145,8 +181,8 @@ public class DspState{
 
     // MDCT is tranform 0
 
-    transform[0][0]=new Mdct();
-    transform[1][0]=new Mdct();
+    transform[0][0]=(mdct==MDCT_FFT ? new FftMdct() : new Mdct());
+    transform[1][0]=(mdct==MDCT_FFT ? new FftMdct() : new Mdct());
     ((Mdct)transform[0][0]).init(vi.blocksizes[0]);
     ((Mdct)transform[1][0]).init(vi.blocksizes[1]);
 
@@ -184,6 +220,9 @@ public class DspState{
     pcm_storage=8192; // we'll assume later that we have
     // a minimum of twice the blocksize of
     // accumulated samples in analysis
+    while(pcm_storage<vi.blocksizes[1]*2){
+      pcm_storage<<=1;
+    }
     pcm=new float[vi.channels][];
     {
       for(int i=0; i<vi.channels; i++){
@@ -201,6 +240,12 @@ public class DspState{
 
     pcm_current=centerW;
 
+    // fresh storage is all zero
+    pcm_zero=new int[vi.channels];
+    for(int i=0; i<vi.channels; i++){
+      pcm_zero[i]=pcm_current-pcm_storage;
+    }
+
     // initialize all the mapping/backend lookups
     mode=new Object[vi.modes];
     for(int i=0; i<vi.modes; i++){
@@ -213,6 +258,13 @@ public class DspState{
   }
 
   public int synthesis_init(Info vi){
+    return (synthesis_init(vi, MDCT_REFERENCE));
+  }
+
+  // as above, decoding with the given inverse MDCT engine; MDCT_FFT is
+  // faster and agrees with MDCT_REFERENCE to within float rounding
+  public int synthesis_init(Info vi, int mdct){
+    this.mdct=mdct;
     init(vi, false);
     // Adjust centerW to allow an easier mechanism for determining output
     pcm_returned=centerW;
@@ -222,6 +274,30 @@ public class DspState{
     return (0);
   }
 
+  // start decoding afresh with the Info given to synthesis_init, as
+  // after a seek, keeping the lookups and storage that were set up for
+  // it
+  public int synthesis_restart(){
+    if(vi==null||pcm==null)
+      return (-1);
+
+    lW=0;
+    W=0;
+    centerW=vi.blocksizes[1]/2;
+    pcm_current=centerW;
+    for(int i=0; i<vi.channels; i++){
+      Arrays.fill(pcm[i], 0.f);
+      pcm_zero[i]=pcm_current-pcm_storage;
+    }
+    eofflag=0;
+
+    pcm_returned=centerW;
+    centerW-=vi.blocksizes[W]/4+vi.blocksizes[lW]/4;
+    granulepos=-1;
+    sequence=-1;
+    return (0);
+  }
+
   DspState(Info vi){
     this();
     init(vi, false);
@@ -237,22 +313,15 @@ public class DspState{
   // calling (as it relies on the previous block).
 
   public int synthesis_blockin(Block vb){
-    // Shift out any PCM/multipliers that we returned previously
-    // centerW is currently the center of the last block added
-    if(centerW>vi.blocksizes[1]/2&&pcm_returned>8192){
-      // don't shift too much; we need to have a minimum PCM buffer of
-      // 1/2 long block
-
-      int shiftPCM=centerW-vi.blocksizes[1]/2;
-      shiftPCM=(pcm_returned<shiftPCM ? pcm_returned : shiftPCM);
-
+    // Keep the ring positions small.  Moving them all by a multiple of
+    // the storage size leaves every sample where it is
+    if(pcm_returned>=pcm_storage){
+      int shiftPCM=pcm_returned&~(pcm_storage-1);
       pcm_current-=shiftPCM;
       centerW-=shiftPCM;
       pcm_returned-=shiftPCM;
-      if(shiftPCM!=0){
-        for(int i=0; i<vi.channels; i++){
-          System.arraycopy(pcm[i], shiftPCM, pcm[i], 0, pcm_current);
-        }
+      for(int i=0; i<vi.channels; i++){
+        pcm_zero[i]-=shiftPCM;
       }
     }
 
@@ -268,6 +337,9 @@ public class DspState{
     if(sequence+1!=vb.sequence)
       granulepos=-1; // out of sequence; lose count
 
+    // the first block after init or restart only primes the overlap; its
+    // left half has nothing to be added to, so none of it is returned
+    boolean primer=(sequence==-1);
     sequence=vb.sequence;
 
     {
@@ -278,16 +350,29 @@ public class DspState{
       int beginSl=0;
       int endSl=0;
 
-      // Do we have enough PCM/mult storage for the block?
-      if(endW>pcm_storage){
-        // expand the storage
-        pcm_storage=endW+vi.blocksizes[1];
+      // Do we have enough PCM/mult storage for the unreturned samples
+      // and the block?
+      int first=(pcm_returned<beginW ? pcm_returned : beginW);
+      if(endW-first>pcm_storage){
+        // expand the storage, keeping the live samples at their positions
+        int mask=pcm_storage-1;
+        while(endW-first>pcm_storage){
+          pcm_storage<<=1;
+        }
+        int foomask=pcm_storage-1;
         for(int i=0; i<vi.channels; i++){
           float[] foo=new float[pcm_storage];
-          System.arraycopy(pcm[i], 0, foo, 0, pcm[i].length);
+          for(int j=first; j<pcm_current; j++){
+            foo[j&foomask]=pcm[i][j&mask];
+          }
           pcm[i]=foo;
+          // everything that was not copied is zero now
+          if(pcm_zero[i]<=first){
+            pcm_zero[i]=pcm_current-pcm_storage;
+          }
         }
       }
+      int mask=pcm_storage-1;
 
       // overlap/add PCM
       switch(W){
@@ -301,16 +386,72 @@ public class DspState{
           break;
       }
 
+      // window the block as it goes in.  The window is flat between
+      // leftEnd and rightBegin, and zero before the left slope (where
+      // nothing is added) and after rightEnd
+      float[] window=vb.window;
+      int leftEnd=sizeW/4+vi.blocksizes[vb.lW]/4;
+      int rightBegin=sizeW-sizeW/4-vi.blocksizes[vb.nW]/4;
+      int rightEnd=rightBegin+vi.blocksizes[vb.nW]/2;
+      if(leftEnd<endSl){
+        leftEnd=endSl;
+      }
+
       for(int j=0; j<vi.channels; j++){
+        float[] in=vb.pcm[j];
+        float[] out=pcm[j];
         int _pcm=beginW;
-        // the overlap/add section
         int i=0;
+
+        if(vb.silent[j]){
+          // adding zeros to the overlap is a no-op, and the remaining
+          // section only needs clearing where it isn't known to be zero
+          int from=_pcm+endSl;
+          int to=endW;
+          if(pcm_zero[j]<=from){
+            if(from<pcm_current){
+              from=pcm_current;
+            }
+            if(to>pcm_zero[j]+pcm_storage){
+              to=pcm_zero[j]+pcm_storage;
+            }
+          }
+          else{
+            pcm_zero[j]=from;
+          }
+          for(i=from; i<to; i++){
+            out[i&mask]=0.f;
+          }
+          silent_blocks++;
+          continue;
+        }
+        pcm_zero[j]=_pcm+rightEnd;
+
+        // the overlap/add section
         for(i=beginSl; i<endSl; i++){
-          pcm[j][_pcm+i]+=vb.pcm[j][i];
+          out[(_pcm+i)&mask]+=in[i]*window[i];
         }
         // the remaining section
+        for(; i<leftEnd; i++){
+          out[(_pcm+i)&mask]=in[i]*window[i];
+        }
+        {
+          int to=(_pcm+i)&mask;
+          int len=rightBegin-i;
+          if(to+len>pcm_storage){
+            int part=pcm_storage-to;
+            System.arraycopy(in, i, out, to, part);
+            System.arraycopy(in, i+part, out, 0, len-part);
+          }
+          else{
+            System.arraycopy(in, i, out, to, len);
+          }
+        }
+        for(i=rightBegin; i<rightEnd; i++){
+          out[(_pcm+i)&mask]=in[i]*window[i];
+        }
         for(; i<sizeW; i++){
-          pcm[j][_pcm+i]=vb.pcm[j][i];
+          out[(_pcm+i)&mask]=0.f;
         }
       }
 
@@ -344,6 +485,8 @@ public class DspState{
 
       centerW=_centerW;
       pcm_current=endW;
+      if(primer)
+        pcm_returned=centerW;
       if(vb.eofflag!=0)
         eofflag=1;
     }
@@ -351,19 +494,42 @@ public class DspState{
   }
 
   // pcm==NULL indicates we just want the pending samples, no more
+  // Returns the samples that can be read from _pcm[0][ch] starting at
+  // index[ch].  When the ready samples wrap around the end of the ring
+  // this is only the part up to the end; the rest is returned by the next
+  // call, after synthesis_read.  With a null _pcm the count of all ready
+  // samples is returned.
   public int synthesis_pcmout(float[][][] _pcm, int[] index){
     if(pcm_returned<centerW){
+      int samples=centerW-pcm_returned;
       if(_pcm!=null){
+        int start=pcm_returned&(pcm_storage-1);
         for(int i=0; i<vi.channels; i++){
-          index[i]=pcm_returned;
+          index[i]=start;
         }
         _pcm[0]=pcm;
+        if(samples>pcm_storage-start){
+          samples=pcm_storage-start;
+        }
       }
-      return (centerW-pcm_returned);
+      return (samples);
     }
     return (0);
   }
 
+  // Granule position of the last sample synthesis_pcmout can return, or
+  // -1 until a packet carrying one has been seen.  The next sample returned
+  // is at synthesis_granulepos()-synthesis_pcmout(null, null).
+  public long synthesis_granulepos(){
+    return (granulepos);
+  }
+
+  // Number of channel blocks found silent so far, whose inverse MDCT,
+  // windowing and overlap were skipped.
+  public long synthesis_silent_blocks(){
+    return (silent_blocks);
+  }
+
   public int synthesis_read(int bytes){
     if(bytes!=0&&pcm_returned+bytes>centerW)
       return (-1);
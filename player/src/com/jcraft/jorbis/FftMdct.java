@@ -0,0 +1,213 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/* JOrbis
+ * Copyright (C) 2000 ymnk, JCraft,Inc.
+ *  
+ * Written by: 2000 ymnk<ymnk@jcraft.com>
+ *   
+ * Many thanks to 
+ *   Monty <monty@xiph.org> and 
+ *   The XIPHOPHORUS Company http://www.xiph.org/ .
+ * JOrbis has been based on their awesome works, Vorbis codec.
+ *   
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+   
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package com.jcraft.jorbis;
+
+// Inverse MDCT computed through an n/4 point complex FFT.
+//
+// The n/2 spectral lines are folded into n/4 complex values and rotated
+// (pre-twiddle), transformed by an iterative radix-4 FFT (with a single
+// radix-2 pass when log2(n/4) is odd), rotated again (post-twiddle) and
+// unfolded into the n output samples using the symmetries of the
+// inverse MDCT.  The output matches Mdct.backward within float rounding.
+class FftMdct extends Mdct{
+
+  // fft size, n/4
+  int m;
+
+  float[] pre;
+  float[] post;
+  float[] twiddle;
+  int[] fftrev;
+
+  // tables only depend on the blocksize, see Mdct
+  private static final float[][] pre_cache=new float[32][];
+  private static final float[][] post_cache=new float[32][];
+  private static final float[][] twiddle_cache=new float[32][];
+  private static final int[][] fftrev_cache=new int[32][];
+
+  void init(int n){
+    log2n=(int)Math.rint(Math.log(n)/Math.log(2));
+    this.n=n;
+    m=n>>>2;
+
+    synchronized(pre_cache){
+      if(pre_cache[log2n]==null){
+        make_tables(n);
+      }
+      pre=pre_cache[log2n];
+      post=post_cache[log2n];
+      twiddle=twiddle_cache[log2n];
+      fftrev=fftrev_cache[log2n];
+    }
+
+    _x=new float[n/2];
+    scale=4.f/n;
+  }
+
+  private void make_tables(int n){
+    int n2=n>>>1;
+    float[] _pre=new float[m*2];
+    float[] _post=new float[m*2];
+    float[] _twiddle=new float[m*2];
+    int[] _fftrev=new int[m];
+
+    for(int k=0; k<m; k++){
+      _pre[k*2]=(float)Math.cos(Math.PI*(k+.25)/n2);
+      _pre[k*2+1]=(float)Math.sin(Math.PI*(k+.25)/n2);
+      _post[k*2]=(float)Math.cos(Math.PI*k/n2);
+      _post[k*2+1]=(float)Math.sin(Math.PI*k/n2);
+      _twiddle[k*2]=(float)Math.cos(2*Math.PI*k/m);
+      _twiddle[k*2+1]=(float)-Math.sin(2*Math.PI*k/m);
+    }
+
+    int bits=log2n-2;
+    for(int k=0; k<m; k++){
+      int acc=0;
+      for(int j=0; j<bits; j++)
+        if((k&(1<<j))!=0)
+          acc|=1<<(bits-1-j);
+      _fftrev[k]=acc;
+    }
+
+    pre_cache[log2n]=_pre;
+    post_cache[log2n]=_post;
+    twiddle_cache[log2n]=_twiddle;
+    fftrev_cache[log2n]=_fftrev;
+  }
+
+  synchronized void backward(float[] in, float[] out){
+    float[] x=_x;
+    int n2=n>>>1;
+    int n4=n>>>2;
+
+    // fold, pre-twiddle and scatter into bit reversed order
+    for(int k=0; k<m; k++){
+      float re=in[k*2];
+      float im=in[n2-1-k*2];
+      float c=pre[k*2];
+      float s=pre[k*2+1];
+      int t=fftrev[k]*2;
+      x[t]=re*c+im*s;
+      x[t+1]=im*c-re*s;
+    }
+
+    fft(x);
+
+    // post-twiddle and unfold; spectral index u[j] lands at
+    // out[j-n4], -out[n2+n4-1-j] and -out[j+n2+n4]
+    for(int k=0; k<m; k++){
+      float re=x[k*2];
+      float im=x[k*2+1];
+      float c=post[k*2];
+      float s=post[k*2+1];
+      float even=re*c+im*s;
+      float odd=re*s-im*c;
+
+      int j=k*2;
+      out[n2+n4-1-j]=-even;
+      if(j<n4){
+        out[j+n2+n4]=-even;
+      }
+      else{
+        out[j-n4]=even;
+      }
+
+      j=n2-1-k*2;
+      out[n2+n4-1-j]=-odd;
+      if(j<n4){
+        out[j+n2+n4]=-odd;
+      }
+      else{
+        out[j-n4]=odd;
+      }
+    }
+  }
+
+  // in place forward complex fft of m interleaved points, input already
+  // in bit reversed order
+  private void fft(float[] x){
+    int len=1;
+
+    if(((log2n-2)&1)!=0){
+      for(int i=0; i<m*2; i+=4){
+        float re=x[i+2];
+        float im=x[i+3];
+        x[i+2]=x[i]-re;
+        x[i+3]=x[i+1]-im;
+        x[i]+=re;
+        x[i+1]+=im;
+      }
+      len=2;
+    }
+
+    // each pass merges four transforms of length len, stored in bit
+    // reversed order as the even-even, even-odd, odd-even and odd-odd
+    // inputs, into one of length 4*len
+    for(; len<m; len<<=2){
+      int step=m/(len*4);
+      for(int base=0; base<m; base+=len*4){
+        for(int k=0; k<len; k++){
+          int a=(base+k)*2;
+          int b=a+len*2;
+          int c=b+len*2;
+          int d=c+len*2;
+
+          float w1r=twiddle[k*step*2];
+          float w1i=twiddle[k*step*2+1];
+          float w2r=twiddle[k*step*4];
+          float w2i=twiddle[k*step*4+1];
+          float w3r=twiddle[k*step*6];
+          float w3i=twiddle[k*step*6+1];
+
+          float ar=x[a];
+          float ai=x[a+1];
+          float br=x[b]*w2r-x[b+1]*w2i;
+          float bi=x[b]*w2i+x[b+1]*w2r;
+          float cr=x[c]*w1r-x[c+1]*w1i;
+          float ci=x[c]*w1i+x[c+1]*w1r;
+          float dr=x[d]*w3r-x[d+1]*w3i;
+          float di=x[d]*w3i+x[d+1]*w3r;
+
+          float s0r=ar+br, s0i=ai+bi;
+          float s1r=ar-br, s1i=ai-bi;
+          float s2r=cr+dr, s2i=ci+di;
+          float s3r=cr-dr, s3i=ci-di;
+
+          x[a]=s0r+s2r;
+          x[a+1]=s0i+s2i;
+          x[c]=s0r-s2r;
+          x[c+1]=s0i-s2i;
+          // -i*(c-d) for the quarter turn outputs
+          x[b]=s1r+s3i;
+          x[b+1]=s1i-s3r;
+          x[d]=s1r-s3i;
+          x[d+1]=s1i+s3r;
+        }
+      }
+    }
+  }
+}
@@ -64,7 +64,7 @@ class Floor0 extends FuncFloor{
     return (info);
   }
 
-  Object look(DspState vd, InfoMode mi, Object i){
+  Look look(DspState vd, InfoMode mi, Object i){
     float scale;
     Info vi=vd.vi;
     InfoFloor0 info=(InfoFloor0)i;
@@ -91,6 +91,30 @@ class Floor0 extends FuncFloor{
         val=look.ln; // guard against the approximation
       look.linearmap[j]=val;
     }
+
+    // split the map into runs of equal bins and take the cosine of each
+    // run's frequency once, here, rather than per block
+    int runs=0;
+    for(int j=0; j<look.n; j++){
+      if(j==0||look.linearmap[j]!=look.linearmap[j-1])
+        runs++;
+    }
+    float wdel=Lsp.M_PI/look.ln;
+    look.runs=runs;
+    look.runstart=new int[runs+1];
+    look.cosw=new float[runs];
+    look.p=new float[runs];
+    look.q=new float[runs];
+    for(int j=0, r=0; j<look.n; j++){
+      if(j==0||look.linearmap[j]!=look.linearmap[j-1]){
+        look.runstart[r]=j;
+        look.cosw[r++]=Lookup.coslook(wdel*look.linearmap[j]);
+      }
+    }
+    look.runstart[runs]=look.n;
+
+    look.lsp=new float[vi.channels][look.m+1];
+    look.nonzero=new boolean[vi.channels];
     return look;
   }
 
@@ -174,13 +198,10 @@ class Floor0 extends FuncFloor{
     return (0);
   }
 
-  Object inverse1(Block vb, Object i, Object memo){
-    LookFloor0 look=(LookFloor0)i;
+  // decodev_set overwrites the first look.m entries of lsp and the amplitude
+  // goes in the last one, so lsp needs no clearing between packets
+  boolean inverse1(Block vb, LookFloor0 look, float[] lsp){
     InfoFloor0 info=look.vi;
-    float[] lsp=null;
-    if(memo instanceof float[]){
-      lsp=(float[])memo;
-    }
 
     int ampraw=vb.opb.read(info.ampbits);
     if(ampraw>0){ // also handles the -1 out of data case
@@ -192,17 +213,9 @@ class Floor0 extends FuncFloor{
         CodeBook b=vb.vd.fullbooks[info.books[booknum]];
         float last=0.f;
 
-        if(lsp==null||lsp.length<look.m+1){
-          lsp=new float[look.m+1];
-        }
-        else{
-          for(int j=0; j<lsp.length; j++)
-            lsp[j]=0.f;
-        }
-
         for(int j=0; j<look.m; j+=b.dim){
           if(b.decodev_set(lsp, j, vb.opb, b.dim)==-1){
-            return (null);
+            return (false);
           }
         }
 
@@ -212,22 +225,21 @@ class Floor0 extends FuncFloor{
           last=lsp[j-1];
         }
         lsp[look.m]=amp;
-        return (lsp);
+        return (true);
       }
     }
-    return (null);
+    return (false);
   }
 
-  int inverse2(Block vb, Object i, Object memo, float[] out){
-    LookFloor0 look=(LookFloor0)i;
+  int inverse2(Block vb, LookFloor0 look, float[] lsp, boolean nonzero,
+      float[] out){
     InfoFloor0 info=look.vi;
 
-    if(memo!=null){
-      float[] lsp=(float[])memo;
+    if(nonzero){
       float amp=lsp[look.m];
 
-      Lsp.lsp_to_curve(out, look.linearmap, look.n, look.ln, lsp, look.m, amp,
-          info.ampdB);
+      Lsp.lsp_to_curve(out, look.runstart, look.cosw, look.runs, look.p,
+          look.q, lsp, look.m, amp, info.ampdB);
       return (1);
     }
     for(int j=0; j<look.n; j++){
@@ -316,7 +328,7 @@ class Floor0 extends FuncFloor{
     int[] books=new int[16];
   }
 
-  class LookFloor0{
+  class LookFloor0 extends FuncFloor.Look{
     int n;
     int ln;
     int m;
@@ -324,6 +336,26 @@ class Floor0 extends FuncFloor{
 
     InfoFloor0 vi;
     Lpc lpclook=new Lpc();
+
+    // linearmap split into runs of equal bins, with the cosine of each
+    // run's frequency and product scratch for Lsp.lsp_to_curve
+    int runs;
+    int[] runstart;
+    float[] cosw;
+    float[] p;
+    float[] q;
+
+    // per channel decode work area; the amplitude rides in lsp[ch][m]
+    float[][] lsp;
+    boolean[] nonzero;
+
+    boolean inverse1(Block vb, int ch){
+      return (nonzero[ch]=Floor0.this.inverse1(vb, this, lsp[ch]));
+    }
+
+    int inverse2(Block vb, int ch, float[] out){
+      return (Floor0.this.inverse2(vb, this, lsp[ch], nonzero[ch], out));
+    }
   }
 
   class EchstateFloor0{
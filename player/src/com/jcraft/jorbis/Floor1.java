@@ -129,7 +129,7 @@ class Floor1 extends FuncFloor{
     return (info);
   }
 
-  Object look(DspState vd, InfoMode mi, Object i){
+  Look look(DspState vd, InfoMode mi, Object i){
     int _n=0;
 
     int[] sortpointer=new int[VIF_POSIT+2];
@@ -225,6 +225,10 @@ class Floor1 extends FuncFloor{
       look.hineighbor[j]=hi;
     }
 
+    look.fit_value=new int[vd.vi.channels][_n];
+    look.nonzero=new boolean[vd.vi.channels];
+    look.curve=new int[Math.max(look.n, vd.vi.blocksizes[mi.blockflag]/2)];
+
     return look;
   }
 
@@ -241,25 +245,14 @@ class Floor1 extends FuncFloor{
     return 0;
   }
 
-  Object inverse1(Block vb, Object ii, Object memo){
-    LookFloor1 look=(LookFloor1)ii;
+  // every one of the look.posts values is written below, so fit_value
+  // needs no clearing between packets
+  boolean inverse1(Block vb, LookFloor1 look, int[] fit_value){
     InfoFloor1 info=look.vi;
     CodeBook[] books=vb.vd.fullbooks;
 
     /* unpack wrapped/predicted values from stream */
     if(vb.opb.read(1)==1){
-      int[] fit_value=null;
-      if(memo instanceof int[]){
-        fit_value=(int[])memo;
-      }
-      if(fit_value==null||fit_value.length<look.posts){
-        fit_value=new int[look.posts];
-      }
-      else{
-        for(int i=0; i<fit_value.length; i++)
-          fit_value[i]=0;
-      }
-
       fit_value[0]=vb.opb.read(Util.ilog(look.quant_q-1));
       fit_value[1]=vb.opb.read(Util.ilog(look.quant_q-1));
 
@@ -276,7 +269,7 @@ class Floor1 extends FuncFloor{
           cval=books[info.class_book[clss]].decode(vb.opb);
 
           if(cval==-1){
-            return (null);
+            return (false);
           }
         }
 
@@ -285,7 +278,7 @@ class Floor1 extends FuncFloor{
           cval>>>=csubbits;
           if(book>=0){
             if((fit_value[j+k]=books[book].decode(vb.opb))==-1){
-              return (null);
+              return (false);
             }
           }
           else{
@@ -332,10 +325,10 @@ class Floor1 extends FuncFloor{
           fit_value[i]=predicted|0x8000;
         }
       }
-      return (fit_value);
+      return (true);
     }
 
-    return (null);
+    return (false);
   }
 
   private static int render_point(int x0, int x1, int y0, int y1, int x){
@@ -355,14 +348,15 @@ class Floor1 extends FuncFloor{
     }
   }
 
-  int inverse2(Block vb, Object i, Object memo, float[] out){
-    LookFloor1 look=(LookFloor1)i;
+  int inverse2(Block vb, LookFloor1 look, int[] fit_value, boolean nonzero,
+      float[] out){
     InfoFloor1 info=look.vi;
-    int n=vb.vd.vi.blocksizes[vb.mode]/2;
+    int n=vb.vd.vi.blocksizes[vb.W]/2;
 
-    if(memo!=null){
-      /* render the lines */
-      int[] fit_value=(int[])memo;
+    if(nonzero){
+      /* render the lines as dB indices first, then look them all up in
+         one straight pass */
+      int[] curve=look.curve;
       int hx=0;
       int lx=0;
       int ly=fit_value[0]*info.mult;
@@ -373,14 +367,17 @@ class Floor1 extends FuncFloor{
           hy*=info.mult;
           hx=info.postlist[current];
 
-          render_line(lx, hx, ly, hy, out);
+          render_line(lx, hx, ly, hy, curve);
 
           lx=hx;
           ly=hy;
         }
       }
       for(int j=hx; j<n; j++){
-        out[j]*=out[j-1]; /* be certain */
+        curve[j]=ly; /* be certain */
+      }
+      for(int j=0; j<n; j++){
+        out[j]*=FLOOR_fromdB_LOOKUP[curve[j]];
       }
       return (1);
     }
@@ -452,7 +449,7 @@ class Floor1 extends FuncFloor{
       0.64356699F, 0.68538959F, 0.72993007F, 0.77736504F, 0.82788260F,
       0.88168307F, 0.9389798F, 1.F};
 
-  private static void render_line(int x0, int x1, int y0, int y1, float[] d){
+  private static void render_line(int x0, int x1, int y0, int y1, int[] d){
     int dy=y1-y0;
     int adx=x1-x0;
     int ady=Math.abs(dy);
@@ -464,7 +461,7 @@ class Floor1 extends FuncFloor{
 
     ady-=Math.abs(base*adx);
 
-    d[x]*=FLOOR_fromdB_LOOKUP[y];
+    d[x]=y;
     while(++x<x1){
       err=err+ady;
       if(err>=adx){
@@ -474,7 +471,7 @@ class Floor1 extends FuncFloor{
       else{
         y+=base;
       }
-      d[x]*=FLOOR_fromdB_LOOKUP[y];
+      d[x]=y;
     }
   }
 
@@ -559,7 +556,7 @@ class Floor1 extends FuncFloor{
 
   }
 
-  class LookFloor1{
+  class LookFloor1 extends FuncFloor.Look{
     static final int VIF_POSIT=63;
 
     int[] sorted_index=new int[VIF_POSIT+2];
@@ -577,6 +574,20 @@ class Floor1 extends FuncFloor{
     int postbits;
     int frames;
 
+    // per channel decode work area
+    int[][] fit_value;
+    boolean[] nonzero;
+    // dB index of each bin, rendered before the floor is applied
+    int[] curve;
+
+    boolean inverse1(Block vb, int ch){
+      return (nonzero[ch]=Floor1.this.inverse1(vb, this, fit_value[ch]));
+    }
+
+    int inverse2(Block vb, int ch, float[] out){
+      return (Floor1.this.inverse2(vb, this, fit_value[ch], nonzero[ch], out));
+    }
+
     void free(){
       sorted_index=null;
       forward_index=null;
@@ -36,7 +36,7 @@ abstract class FuncFloor{
 
   abstract Object unpack(Info vi, Buffer opb);
 
-  abstract Object look(DspState vd, InfoMode mi, Object i);
+  abstract Look look(DspState vd, InfoMode mi, Object i);
 
   abstract void free_info(Object i);
 
@@ -46,7 +46,14 @@ abstract class FuncFloor{
 
   abstract int forward(Block vb, Object i, float[] in, float[] out, Object vs);
 
-  abstract Object inverse1(Block vb, Object i, Object memo);
+  // Decode side lookup of one floor instance.  It owns a typed work
+  // area per channel, sized when the look is built, so the per-packet
+  // calls below neither allocate nor downcast.
+  static abstract class Look{
+    // unpacks the floor of channel ch; false if the channel is unused
+    abstract boolean inverse1(Block vb, int ch);
 
-  abstract int inverse2(Block vb, Object i, Object memo, float[] out);
+    // applies the floor curve decoded for channel ch to out
+    abstract int inverse2(Block vb, int ch, float[] out);
+  }
 }
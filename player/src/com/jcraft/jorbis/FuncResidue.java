@@ -36,11 +36,15 @@ abstract class FuncResidue{
 
   abstract Object unpack(Info vi, Buffer opb);
 
-  abstract Object look(DspState vd, InfoMode vm, Object vr);
+  abstract Look look(DspState vd, InfoMode vm, Object vr);
 
   abstract void free_info(Object i);
 
   abstract void free_look(Object i);
 
-  abstract int inverse(Block vb, Object vl, float[][] in, int[] nonzero, int ch);
+  // Decode side lookup of one residue instance, holding its own
+  // partition word scratch so decoders never share state.
+  static abstract class Look{
+    abstract int inverse(Block vb, float[][] in, int[] nonzero, int ch);
+  }
 }
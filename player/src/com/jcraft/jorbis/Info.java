@@ -433,9 +433,12 @@ public class Info{
   }
 
   public int blocksize(Packet op){
-    //codec_setup_info
-    Buffer opb=new Buffer();
+    return (blocksize(op, new Buffer()));
+  }
 
+  // as above, reading the packet through the caller's buffer
+  int blocksize(Packet op, Buffer opb){
+    //codec_setup_info
     int mode;
 
     opb.readinit(op.packet_base, op.packet, op.bytes);
@@ -104,4 +104,77 @@ class Lsp{
 
     }
   }
+
+  // Same curve as above, but for a map that has been split into runs of
+  // equal bins ahead of time: runstart[r] is the first index of run r
+  // (runstart[runs]==n) and cosw[r] the cosine of its frequency.  The
+  // product for every run is accumulated one lsp pair at a time, so the
+  // inner loops walk the flat p and q scratch arrays of length runs.
+  static void lsp_to_curve(float[] curve, int[] runstart, float[] cosw,
+      int runs, float[] p, float[] q, float[] lsp, int m, float amp,
+      float ampoffset){
+    int m2=(m/2)*2;
+
+    for(int r=0; r<runs; r++){
+      p[r]=.7071067812f;
+      q[r]=.7071067812f;
+    }
+    for(int j=0; j<m2; j+=2){
+      float lq=Lookup.coslook(lsp[j]);
+      float lp=Lookup.coslook(lsp[j+1]);
+      for(int r=0; r<runs; r++){
+        q[r]*=lq-cosw[r];
+        p[r]*=lp-cosw[r];
+      }
+    }
+
+    if((m&1)!=0){
+      /* odd order filter; slightly assymetric */
+      /* the last coefficient */
+      float lq=Lookup.coslook(lsp[m-1]);
+      for(int r=0; r<runs; r++){
+        float w=cosw[r];
+        float qr=q[r]*(lq-w);
+        q[r]=qr*qr;
+        p[r]*=p[r]*(1.f-w*w);
+      }
+    }
+    else{
+      /* even order filter; still symmetric */
+      for(int r=0; r<runs; r++){
+        float w=cosw[r];
+        q[r]*=q[r]*(1.f+w);
+        p[r]*=p[r]*(1.f-w);
+      }
+    }
+
+    for(int r=0; r<runs; r++){
+      //  q=frexp(p+q,&qexp);
+      float v=p[r]+q[r];
+      int hx=Float.floatToIntBits(v);
+      int ix=0x7fffffff&hx;
+      int qexp=0;
+
+      if(ix>=0x7f800000||(ix==0)){
+        // 0,inf,nan
+      }
+      else{
+        if(ix<0x00800000){ // subnormal
+          v*=3.3554432000e+07; // 0x4c000000
+          hx=Float.floatToIntBits(v);
+          ix=0x7fffffff&hx;
+          qexp=-25;
+        }
+        qexp+=((ix>>>23)-126);
+        hx=(hx&0x807fffff)|0x3f000000;
+        v=Float.intBitsToFloat(hx);
+      }
+
+      v=Lookup.fromdBlook(amp*Lookup.invsqlook(v)*Lookup.invsq2explook(qexp+m)
+          -ampoffset);
+
+      for(int i=runstart[r]; i<runstart[r+1]; i++)
+        curve[i]*=v;
+    }
+  }
 }
@@ -45,8 +45,8 @@ class Mapping0 extends FuncMapping{
     look.mode=vm;
 
     look.time_look=new Object[info.submaps];
-    look.floor_look=new Object[info.submaps];
-    look.residue_look=new Object[info.submaps];
+    look.floor_look=new FuncFloor.Look[info.submaps];
+    look.residue_look=new FuncResidue.Look[info.submaps];
 
     look.time_func=new FuncTime[info.submaps];
     look.floor_func=new FuncFloor[info.submaps];
@@ -74,6 +74,10 @@ class Mapping0 extends FuncMapping{
 
     look.ch=vi.channels;
 
+    look.pcmbundle=new float[vi.channels][];
+    look.zerobundle=new int[vi.channels];
+    look.nonzero=new int[vi.channels];
+
     return (look);
   }
 
@@ -183,12 +187,7 @@ class Mapping0 extends FuncMapping{
     return info;
   }
 
-  float[][] pcmbundle=null;
-  int[] zerobundle=null;
-  int[] nonzero=null;
-  Object[] floormemo=null;
-
-  synchronized int inverse(Block vb, Object l){
+  int inverse(Block vb, Object l){
     DspState vd=vb.vd;
     Info vi=vd.vi;
     LookMapping0 look=(LookMapping0)l;
@@ -197,12 +196,9 @@ class Mapping0 extends FuncMapping{
     int n=vb.pcmend=vi.blocksizes[vb.W];
 
     float[] window=vd.window[vb.W][vb.lW][vb.nW][mode.windowtype];
-    if(pcmbundle==null||pcmbundle.length<vi.channels){
-      pcmbundle=new float[vi.channels][];
-      nonzero=new int[vi.channels];
-      zerobundle=new int[vi.channels];
-      floormemo=new Object[vi.channels];
-    }
+    float[][] pcmbundle=look.pcmbundle;
+    int[] zerobundle=look.zerobundle;
+    int[] nonzero=look.nonzero;
 
     // time domain information decode (note that applying the
     // information would have to happen later; we'll probably add a
@@ -214,13 +210,15 @@ class Mapping0 extends FuncMapping{
       float[] pcm=vb.pcm[i];
       int submap=info.chmuxlist[i];
 
-      floormemo[i]=look.floor_func[submap].inverse1(vb,
-          look.floor_look[submap], floormemo[i]);
-      if(floormemo[i]!=null){
+      if(look.floor_look[submap].inverse1(vb, i)){
         nonzero[i]=1;
+        vb.silent[i]=false;
       }
       else{
         nonzero[i]=0;
+        // an unused floor zeroes the whole channel, whatever coupling
+        // and residue leave in it
+        vb.silent[i]=true;
       }
       for(int j=0; j<n/2; j++){
         pcm[j]=0;
@@ -251,8 +249,7 @@ class Mapping0 extends FuncMapping{
         }
       }
 
-      look.residue_func[i].inverse(vb, look.residue_look[i], pcmbundle,
-          zerobundle, ch_in_bundle);
+      look.residue_look[i].inverse(vb, pcmbundle, zerobundle, ch_in_bundle);
     }
 
     for(int i=info.coupling_steps-1; i>=0; i--){
@@ -288,17 +285,22 @@ class Mapping0 extends FuncMapping{
 
     //    /* compute and apply spectral envelope */
 
+    // silent channels skip the floor and the transform; their pcm is
+    // left as is and never read
     for(int i=0; i<vi.channels; i++){
+      if(vb.silent[i])
+        continue;
       float[] pcm=vb.pcm[i];
       int submap=info.chmuxlist[i];
-      look.floor_func[submap].inverse2(vb, look.floor_look[submap],
-          floormemo[i], pcm);
+      look.floor_look[submap].inverse2(vb, i, pcm);
     }
 
     // transform the PCM data; takes PCM vector, vb; modifies PCM vector
     // only MDCT right now....
 
     for(int i=0; i<vi.channels; i++){
+      if(vb.silent[i])
+        continue;
       float[] pcm=vb.pcm[i];
       //_analysis_output("out",seq+i,pcm,n/2,0,0);
       ((Mdct)vd.transform[vb.W][0]).backward(pcm, pcm);
@@ -307,20 +309,9 @@ class Mapping0 extends FuncMapping{
     // now apply the decoded pre-window time information
     // NOT IMPLEMENTED
 
-    // window the data
-    for(int i=0; i<vi.channels; i++){
-      float[] pcm=vb.pcm[i];
-      if(nonzero[i]!=0){
-        for(int j=0; j<n; j++){
-          pcm[j]*=window[j];
-        }
-      }
-      else{
-        for(int j=0; j<n; j++){
-          pcm[j]=0.f;
-        }
-      }
-    }
+    // the window is applied by DspState.synthesis_blockin as the data is
+    // overlapped into the output
+    vb.window=window;
 
     // now apply the decoded post-window time information
     // NOT IMPLEMENTED
@@ -357,9 +348,9 @@ class Mapping0 extends FuncMapping{
     InfoMode mode;
     InfoMapping0 map;
     Object[] time_look;
-    Object[] floor_look;
+    FuncFloor.Look[] floor_look;
     Object[] floor_state;
-    Object[] residue_look;
+    FuncResidue.Look[] residue_look;
     PsyLook[] psy_look;
 
     FuncTime[] time_func;
@@ -370,6 +361,11 @@ class Mapping0 extends FuncMapping{
     float[][] decay;
     int lastframe; // if a different mode is called, we need to 
     // invalidate decay and floor state
+
+    // decode scratch, one slot per channel
+    float[][] pcmbundle;
+    int[] zerobundle;
+    int[] nonzero;
   }
 
 }
@@ -36,13 +36,37 @@ class Mdct{
 
   float scale;
 
-  void init(int n){
-    bitrev=new int[n/4];
-    trig=new float[n+n/4];
+  float[] _x;
+  float[] _w;
+
+  // trig and bitrev only depend on the blocksize, so they are built
+  // once per log2(n) and shared read-only by every decoder instance
+  private static final float[][] trig_cache=new float[32][];
+  private static final int[][] bitrev_cache=new int[32][];
 
+  void init(int n){
     log2n=(int)Math.rint(Math.log(n)/Math.log(2));
     this.n=n;
 
+    synchronized(trig_cache){
+      if(trig_cache[log2n]==null){
+        float[] _trig=new float[n+n/4];
+        int[] _bitrev=new int[n/4];
+        make_lookups(n, log2n, _trig, _bitrev);
+        trig_cache[log2n]=_trig;
+        bitrev_cache[log2n]=_bitrev;
+      }
+      trig=trig_cache[log2n];
+      bitrev=bitrev_cache[log2n];
+    }
+
+    _x=new float[n/2];
+    _w=new float[n/2];
+    scale=4.f/n;
+  }
+
+  private static void make_lookups(int n, int log2n, float[] trig,
+      int[] bitrev){
     int AE=0;
     int AO=1;
     int BE=AE+n/2;
@@ -74,7 +98,6 @@ class Mdct{
         bitrev[i*2+1]=acc;
       }
     }
-    scale=4.f/n;
   }
 
   void clear(){
@@ -83,9 +106,6 @@ class Mdct{
   void forward(float[] in, float[] out){
   }
 
-  float[] _x=new float[1024];
-  float[] _w=new float[1024];
-
   synchronized void backward(float[] in, float[] out){
     if(_x.length<n/2){
       _x=new float[n/2];
@@ -0,0 +1,151 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/* JOrbis
+ * Copyright (C) 2000 ymnk, JCraft,Inc.
+ *  
+ * Written by: 2000 ymnk<ymnk@jcraft.com>
+ *   
+ * Many thanks to 
+ *   Monty <monty@xiph.org> and 
+ *   The XIPHOPHORUS Company http://www.xiph.org/ .
+ * JOrbis has been based on their awesome works, Vorbis codec.
+ *   
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+   
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package com.jcraft.jorbis;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// A sparse map from granule positions to the raw offsets of the pages
+// that carry them, kept for one logical bitstream.  Entries are sorted
+// by granulepos (and so by offset) and at least 'spacing' samples apart,
+// so a long link needs only a few thousand of them.  The seek code fills
+// it in as it bisects and reads pages; a full scan fills every gap.
+// VorbisFile saves it in its seek index sidecar.
+class PageIndex{
+  long spacing;
+  long[] granulepos=new long[64];
+  long[] offset=new long[64];
+  int entries;
+
+  // set once every page of the link went through add()
+  boolean complete;
+
+  PageIndex(long spacing){
+    this.spacing=(spacing>0 ? spacing : 1);
+  }
+
+  // index of the last entry with a granulepos below target, -1 if none
+  int find(long target){
+    int lo=0;
+    int hi=entries;
+    while(lo<hi){
+      int mid=(lo+hi)>>>1;
+      if(granulepos[mid]<target){
+        lo=mid+1;
+      }
+      else{
+        hi=mid;
+      }
+    }
+    return (lo-1);
+  }
+
+  // note that the page starting at 'pos' carries granulepos 'granule'.
+  // Pages too close to an entry already there are dropped
+  void add(long pos, long granule){
+    if(granule<0)
+      return;
+    int i=find(granule)+1;
+    if(i>0&&granule-granulepos[i-1]<spacing)
+      return;
+    if(i<entries&&granulepos[i]-granule<spacing)
+      return;
+    if(entries==granulepos.length){
+      long[] foo=new long[entries*2];
+      System.arraycopy(granulepos, 0, foo, 0, entries);
+      granulepos=foo;
+      foo=new long[entries*2];
+      System.arraycopy(offset, 0, foo, 0, entries);
+      offset=foo;
+    }
+    System.arraycopy(granulepos, i, granulepos, i+1, entries-i);
+    System.arraycopy(offset, i, offset, i+1, entries-i);
+    granulepos[i]=granule;
+    offset[i]=pos;
+    entries++;
+  }
+
+  // entries are stored as deltas from the previous one, seven bits to
+  // a byte, so the usual deltas take two or three bytes and any gap,
+  // in a file of any size, still fits
+  void write(DataOutputStream out) throws IOException{
+    out.writeLong(spacing);
+    out.writeBoolean(complete);
+    out.writeInt(entries);
+    long lastpos=0;
+    long lastgranule=0;
+    for(int i=0; i<entries; i++){
+      write_delta(out, granulepos[i]-lastgranule);
+      write_delta(out, offset[i]-lastpos);
+      lastgranule=granulepos[i];
+      lastpos=offset[i];
+    }
+  }
+
+  static void write_delta(DataOutputStream out, long delta) throws IOException{
+    if(delta<0)
+      throw new IOException("PageIndex: entries out of order");
+    while(delta>=0x80){
+      out.writeByte((int)(delta&0x7f)|0x80);
+      delta>>>=7;
+    }
+    out.writeByte((int)delta);
+  }
+
+  static long read_delta(DataInputStream in) throws IOException{
+    long delta=0;
+    for(int shift=0; shift<63; shift+=7){
+      int b=in.readUnsignedByte();
+      delta|=(long)(b&0x7f)<<shift;
+      if((b&0x80)==0)
+        return (delta);
+    }
+    throw new IOException("PageIndex: bad delta");
+  }
+
+  static PageIndex read(DataInputStream in) throws IOException{
+    PageIndex index=new PageIndex(in.readLong());
+    index.complete=in.readBoolean();
+    int entries=in.readInt();
+    if(entries<0)
+      throw new IOException("PageIndex: bad entry count "+entries);
+    index.granulepos=new long[entries>0 ? entries : 1];
+    index.offset=new long[entries>0 ? entries : 1];
+    long lastpos=0;
+    long lastgranule=0;
+    for(int i=0; i<entries; i++){
+      lastgranule+=read_delta(in);
+      lastpos+=read_delta(in);
+      index.granulepos[i]=lastgranule;
+      index.offset[i]=lastpos;
+    }
+    index.entries=entries;
+    return index;
+  }
+}
@@ -0,0 +1,170 @@
+/* -*-mode:java; c-basic-offset:2; indent-tabs-mode:nil -*- */
+/* JOrbis
+ * Copyright (C) 2000 ymnk, JCraft,Inc.
+ *  
+ * Written by: 2000 ymnk<ymnk@jcraft.com>
+ *   
+ * Many thanks to 
+ *   Monty <monty@xiph.org> and 
+ *   The XIPHOPHORUS Company http://www.xiph.org/ .
+ * JOrbis has been based on their awesome works, Vorbis codec.
+ *   
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+   
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package com.jcraft.jorbis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Decodes a range of a seekable VorbisFile on several threads.
+//
+// A Vorbis block only depends on the block before it (for the overlap),
+// so the range is cut into segments that are decoded independently.
+// Each segment gets a reader of its own on the same file; pcm_seek
+// brings it to the first sample of the segment, running the packet
+// before it as preroll.  The segments land next to each other in the
+// output, and the result is the same, sample for sample, as reading
+// the range from one VorbisFile.
+//
+// Meant for offline work (transcoding, fingerprinting, loudness
+// analysis) on files opened with VorbisFile(String).
+
+public class ParallelDecoder{
+  // segments shorter than this aren't worth a seek and a preroll
+  static final int MIN_SEGMENT=65536;
+
+  VorbisFile vf;
+  ExecutorService pool;
+  int threads;
+
+  public ParallelDecoder(VorbisFile vf, int threads){
+    this.vf=vf;
+    this.threads=(threads>0 ? threads : 1);
+    pool=Executors.newFixedThreadPool(this.threads, new ThreadFactory(){
+      public Thread newThread(Runnable r){
+        // a decoder nobody closed mustn't keep the VM alive
+        Thread thread=new Thread(r, "ParallelDecoder");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  // decode samples begin (inclusive) to end (exclusive) of the whole
+  // file, as vf.pcm_tell() counts them.  end is clipped to the end of
+  // the file.  The range may cross links as long as they have the same
+  // number of channels.
+  //
+  // returns one array per channel holding end-begin samples
+  public float[][] decode(long begin, long end) throws JOrbisException{
+    if(!vf.seekable())
+      throw new JOrbisException("ParallelDecoder: not seekable");
+    long total=vf.pcm_total(-1);
+    if(end>total)
+      end=total;
+    if(begin<0||begin>end)
+      throw new JOrbisException("ParallelDecoder: bad range "+begin+"-"+end);
+
+    int channels=channels(begin, end);
+    final float[][] pcm=new float[channels][(int)(end-begin)];
+
+    long length=end-begin;
+    int segments=(int)Math.min(threads*4, length/MIN_SEGMENT);
+    if(segments<1)
+      segments=1;
+
+    List<Future<Object>> done=new ArrayList<Future<Object>>();
+    for(int i=0; i<segments; i++){
+      final long from=begin+length*i/segments;
+      final long to=begin+length*(i+1)/segments;
+      final int at=(int)(from-begin);
+      done.add(pool.submit(new Callable<Object>(){
+        public Object call() throws Exception{
+          decode(from, to, pcm, at);
+          return null;
+        }
+      }));
+    }
+
+    try{
+      for(int i=0; i<done.size(); i++){
+        done.get(i).get();
+      }
+    }
+    catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new JOrbisException("ParallelDecoder: interrupted");
+    }
+    catch(ExecutionException e){
+      throw new JOrbisException("ParallelDecoder: "+e.getCause());
+    }
+    return pcm;
+  }
+
+  // one segment: samples from to to, written to pcm starting at 'at'
+  void decode(long from, long to, float[][] pcm, int at) throws Exception{
+    VorbisFile reader=vf.reader();
+    try{
+      if(reader.pcm_seek(from)!=0)
+        throw new JOrbisException("ParallelDecoder: seek to "+from+" failed");
+
+      long pos=from;
+      while(pos<to){
+        int samples=reader.readFloats(pcm, at, (int)(to-pos));
+        if(samples==0)
+          throw new JOrbisException("ParallelDecoder: early end at "+pos);
+        if(samples<0)
+          throw new JOrbisException("ParallelDecoder: hole at "+pos);
+        at+=samples;
+        pos+=samples;
+      }
+    }
+    finally{
+      reader.decode_clear();
+    }
+  }
+
+  // the number of channels over the links the range touches
+  int channels(long begin, long end) throws JOrbisException{
+    int channels=-1;
+    long total=0;
+    for(int i=0; i<vf.streams(); i++){
+      long length=vf.pcm_total(i);
+      if(total<end&&total+length>begin){
+        int ch=vf.getInfo(i).channels;
+        if(channels!=-1&&ch!=channels)
+          throw new JOrbisException("ParallelDecoder: channel count changes");
+        channels=ch;
+      }
+      total+=length;
+    }
+    if(channels==-1)
+      channels=vf.getInfo(vf.streams()-1).channels;
+    return channels;
+  }
+
+  // stop the threads.  decode() can't be called afterwards
+  public void close(){
+    pool.shutdown();
+  }
+}
@@ -97,7 +97,7 @@ class Residue0 extends FuncResidue{
     return (info);
   }
 
-  Object look(DspState vd, InfoMode vm, Object vr){
+  Look look(DspState vd, InfoMode vm, Object vr){
     InfoResidue0 info=(InfoResidue0)vr;
     LookResidue0 look=new LookResidue0();
     int acc=0;
@@ -144,6 +144,9 @@ class Residue0 extends FuncResidue{
         look.decodemap[j][k]=deco;
       }
     }
+
+    int partvals=(info.end-info.begin)/info.grouping;
+    look.partword=new int[vd.vi.channels][(partvals+dim-1)/dim][];
     return (look);
   }
 
@@ -153,14 +156,11 @@ class Residue0 extends FuncResidue{
   void free_look(Object i){
   }
 
-  private static int[][][] _01inverse_partword=new int[2][][]; // _01inverse is synchronized for
-
-  // re-using partword
-  synchronized static int _01inverse(Block vb, Object vl, float[][] in, int ch,
+  static int _01inverse(Block vb, LookResidue0 look, float[][] in, int ch,
       int decodepart){
     int i, j, k, l, s;
-    LookResidue0 look=(LookResidue0)vl;
     InfoResidue0 info=look.info;
+    int[][][] partword=look.partword;
 
     // move all this setup out later
     int samples_per_partition=info.grouping;
@@ -168,17 +168,6 @@ class Residue0 extends FuncResidue{
     int n=info.end-info.begin;
 
     int partvals=n/samples_per_partition;
-    int partwords=(partvals+partitions_per_word-1)/partitions_per_word;
-
-    if(_01inverse_partword.length<ch){
-      _01inverse_partword=new int[ch][][];
-    }
-
-    for(j=0; j<ch; j++){
-      if(_01inverse_partword[j]==null||_01inverse_partword[j].length<partwords){
-        _01inverse_partword[j]=new int[partwords][];
-      }
-    }
 
     for(s=0; s<look.stages; s++){
       // each loop decodes on partition codeword containing 
@@ -191,8 +180,8 @@ class Residue0 extends FuncResidue{
             if(temp==-1){
               return (0);
             }
-            _01inverse_partword[j][l]=look.decodemap[temp];
-            if(_01inverse_partword[j][l]==null){
+            partword[j][l]=look.decodemap[temp];
+            if(partword[j][l]==null){
               return (0);
             }
           }
@@ -202,7 +191,7 @@ class Residue0 extends FuncResidue{
         for(k=0; k<partitions_per_word&&i<partvals; k++, i++)
           for(j=0; j<ch; j++){
             int offset=info.begin+i*samples_per_partition;
-            int index=_01inverse_partword[j][l][k];
+            int index=partword[j][l][k];
             if((info.secondstages[index]&(1<<s))!=0){
               CodeBook stagebook=look.fullbooks[look.partbooks[index][s]];
               if(stagebook!=null){
@@ -226,12 +215,10 @@ class Residue0 extends FuncResidue{
     return (0);
   }
 
-  static int[][] _2inverse_partword=null;
-
-  synchronized static int _2inverse(Block vb, Object vl, float[][] in, int ch){
+  static int _2inverse(Block vb, LookResidue0 look, float[][] in, int ch){
     int i, k, l, s;
-    LookResidue0 look=(LookResidue0)vl;
     InfoResidue0 info=look.info;
+    int[][] partword=look.partword[0];
 
     // move all this setup out later
     int samples_per_partition=info.grouping;
@@ -239,11 +226,7 @@ class Residue0 extends FuncResidue{
     int n=info.end-info.begin;
 
     int partvals=n/samples_per_partition;
-    int partwords=(partvals+partitions_per_word-1)/partitions_per_word;
 
-    if(_2inverse_partword==null||_2inverse_partword.length<partwords){
-      _2inverse_partword=new int[partwords][];
-    }
     for(s=0; s<look.stages; s++){
       for(i=0, l=0; i<partvals; l++){
         if(s==0){
@@ -252,8 +235,8 @@ class Residue0 extends FuncResidue{
           if(temp==-1){
             return (0);
           }
-          _2inverse_partword[l]=look.decodemap[temp];
-          if(_2inverse_partword[l]==null){
+          partword[l]=look.decodemap[temp];
+          if(partword[l]==null){
             return (0);
           }
         }
@@ -261,7 +244,7 @@ class Residue0 extends FuncResidue{
         // now we decode residual values for the partitions
         for(k=0; k<partitions_per_word&&i<partvals; k++, i++){
           int offset=info.begin+i*samples_per_partition;
-          int index=_2inverse_partword[l][k];
+          int index=partword[l][k];
           if((info.secondstages[index]&(1<<s))!=0){
             CodeBook stagebook=look.fullbooks[look.partbooks[index][s]];
             if(stagebook!=null){
@@ -277,7 +260,7 @@ class Residue0 extends FuncResidue{
     return (0);
   }
 
-  int inverse(Block vb, Object vl, float[][] in, int[] nonzero, int ch){
+  int inverse(Block vb, LookResidue0 look, float[][] in, int[] nonzero, int ch){
     int used=0;
     for(int i=0; i<ch; i++){
       if(nonzero[i]!=0){
@@ -285,12 +268,12 @@ class Residue0 extends FuncResidue{
       }
     }
     if(used!=0)
-      return (_01inverse(vb, vl, in, used, 0));
+      return (_01inverse(vb, look, in, used, 0));
     else
       return (0);
   }
 
-  class LookResidue0{
+  class LookResidue0 extends FuncResidue.Look{
     InfoResidue0 info;
     int map;
 
@@ -306,6 +289,13 @@ class Residue0 extends FuncResidue{
     int postbits;
     int phrasebits;
     int frames;
+
+    // partition words of the packet being decoded, [channel][word]
+    int[][][] partword;
+
+    int inverse(Block vb, float[][] in, int[] nonzero, int ch){
+      return (Residue0.this.inverse(vb, this, in, nonzero, ch));
+    }
   }
 
   class InfoResidue0{
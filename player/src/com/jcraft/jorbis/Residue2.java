@@ -28,7 +28,7 @@ package com.jcraft.jorbis;
 
 class Residue2 extends Residue0{
 
-  int inverse(Block vb, Object vl, float[][] in, int[] nonzero, int ch){
+  int inverse(Block vb, LookResidue0 look, float[][] in, int[] nonzero, int ch){
     int i=0;
     for(i=0; i<ch; i++)
       if(nonzero[i]!=0)
@@ -36,6 +36,6 @@ class Residue2 extends Residue0{
     if(i==ch)
       return (0); /* no nonzero vectors */
 
-    return (_2inverse(vb, vl, in, ch));
+    return (_2inverse(vb, look, in, ch));
   }
 }
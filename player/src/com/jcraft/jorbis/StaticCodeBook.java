@@ -406,6 +406,41 @@ class StaticCodeBook{
     return (null);
   }
 
+  // maptype 1 books without sequencep only ever hold quantvals distinct
+  // scalars; every vector is a tuple of digits of its entry number in
+  // base quantvals.  Such books are kept as the short scalar list plus
+  // one byte per digit instead of the dim*entries floats of unquantize()
+  boolean compact_lattice(){
+    return maptype==1&&q_sequencep==0&&maptype1_quantvals()<=256;
+  }
+
+  // the quantvals distinct values of a compact lattice book
+  float[] lattice_values(){
+    int quantvals=maptype1_quantvals();
+    float mindel=float32_unpack(q_min);
+    float delta=float32_unpack(q_delta);
+    float[] r=new float[quantvals];
+    for(int i=0; i<quantvals; i++){
+      float val=quantlist[i];
+      r[i]=Math.abs(val)*delta+mindel+0.f;
+    }
+    return (r);
+  }
+
+  // dim*entries digits indexing lattice_values(), in valuelist order
+  byte[] lattice_map(){
+    int quantvals=maptype1_quantvals();
+    byte[] r=new byte[entries*dim];
+    for(int j=0; j<entries; j++){
+      int indexdiv=1;
+      for(int k=0; k<dim; k++){
+        r[j*dim+k]=(byte)((j/indexdiv)%quantvals);
+        indexdiv*=quantvals;
+      }
+    }
+    return (r);
+  }
+
   // 32 bit float (not IEEE; nonnormalized mantissa +
   // biased exponent) : neeeeeee eeemmmmm mmmmmmmm mmmmmmmm 
   // Why not IEEE?  It's just not that important here.
@@ -29,8 +29,26 @@ package com.jcraft.jorbis;
 
 import com.jcraft.jogg.*;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VorbisFile{
   static final int CHUNKSIZE=8500;
@@ -54,6 +72,17 @@ public class VorbisFile{
   static final int OV_EBADLINK=-137;
   static final int OV_ENOSEEK=-138;
 
+  // threads open_seekable() uses by default to find and read the links
+  // of a chained file
+  static final int OPEN_THREADS=Runtime.getRuntime().availableProcessors();
+
+  // the threads of every open_parallel(), made as needed and let go
+  // when idle.  Each open keeps at most open_threads of them busy
+  static ExecutorService open_pool;
+
+  static final int INDEX_MAGIC=0x4f676749; // "OggI"
+  static final int INDEX_VERSION=2;
+
   InputStream datasource;
   boolean seekable=false;
   long offset;
@@ -61,6 +90,10 @@ public class VorbisFile{
 
   SyncState oy=new SyncState();
 
+  // threads this file is opened on, the calling one included.  1 keeps
+  // all of it on the calling thread
+  int open_threads=1;
+
   int links;
   long[] offsets;
   long[] dataoffsets;
@@ -69,8 +102,14 @@ public class VorbisFile{
   Info[] vi;
   Comment[] vc;
 
+  // granulepos to page offset maps, one per link, filled in lazily
+  PageIndex[] pageindex;
+  float index_interval=1.f;
+
   // Decoding working state local storage
   long pcm_offset;
+  float[][][] _pcm=new float[1][][];
+  int[] _index;
   boolean decode_ready=false;
 
   int current_serialno;
@@ -85,17 +124,52 @@ public class VorbisFile{
   // the packet->PCM decoder
   Block vb=new Block(vd); // local working space for packet->PCM decode
 
+  // scratch for the helpers below, so seeking and reading make no
+  // garbage.  None of them holds on to it across a call to another
+  Page og=new Page();
+  Packet op=new Packet();
+  Packet prev=new Packet(); // the preroll packet of skip_packets()
+  Buffer opb=new Buffer();
+
   //ov_callbacks callbacks;
 
+  // a reader of the same file for the threads of open_parallel()
+  private VorbisFile(){
+    super();
+  }
+
   public VorbisFile(String file) throws JOrbisException{
+    this(file, null, OPEN_THREADS);
+  }
+
+  // open a file with a seek index sidecar next to it.  If the sidecar
+  // matches the file (same length and modification time) the links and
+  // the page index are taken from it and the file isn't scanned at all.
+  // Otherwise the file is opened and indexed as usual and the sidecar is
+  // (re)written for the next time.
+  public VorbisFile(String file, String sidecar) throws JOrbisException{
+    this(file, sidecar, OPEN_THREADS);
+  }
+
+  // open a file, with a seek index sidecar unless sidecar is null, on
+  // up to 'threads' threads.  1 opens it on the calling thread alone
+  public VorbisFile(String file, String sidecar, int threads)
+      throws JOrbisException{
     super();
+    open_threads=(threads>0 ? threads : 1);
     InputStream is=null;
     try{
       is=new SeekableInputStream(file);
-      int ret=open(is, null, 0);
-      if(ret==-1){
-        throw new JOrbisException("VorbisFile: open return -1");
+      if(sidecar==null||open_sidecar(is, file, sidecar)!=0){
+        int ret=open(is, null, 0);
+        if(ret==-1){
+          throw new JOrbisException("VorbisFile: open return -1");
+        }
+        if(sidecar!=null&&build_index()==0){
+          write_sidecar(file, sidecar);
+        }
       }
+      is=null; // keep it open for reading and seeking; see close()
     }
     catch(Exception e){
       throw new JOrbisException("VorbisFile: "+e.toString());
@@ -209,7 +283,7 @@ public class VorbisFile{
       int currentno, int m){
     long endsearched=end;
     long next=end;
-    Page page=new Page();
+    Page page=og;
     int ret;
 
     while(searched<endsearched){
@@ -256,8 +330,6 @@ public class VorbisFile{
   // uses the local ogg_stream storage in vf; this is important for
   // non-streaming input sources
   int fetch_headers(Info vi, Comment vc, int[] serialno, Page og_ptr){
-    Page og=new Page();
-    Packet op=new Packet();
     int ret;
 
     if(og_ptr==null){
@@ -273,6 +345,7 @@ public class VorbisFile{
       serialno[0]=og_ptr.serialno();
 
     os.init(og_ptr.serialno());
+    os.reset();
 
     // extract the initial header from the first page and verify that the
     // Ogg bitstream is in fact Vorbis data
@@ -318,9 +391,6 @@ public class VorbisFile{
   // attention to how that's done)
   void prefetch_all_headers(Info first_i, Comment first_c, int dataoffset)
       throws JOrbisException{
-    Page og=new Page();
-    int ret;
-
     vi=new Info[links];
     vc=new Comment[links];
     dataoffsets=new long[links];
@@ -328,46 +398,54 @@ public class VorbisFile{
     serialnos=new int[links];
 
     for(int i=0; i<links; i++){
-      if(first_i!=null&&first_c!=null&&i==0){
-        // we already grabbed the initial header earlier.  This just
-        // saves the waste of grabbing it again
-        vi[i]=first_i;
-        vc[i]=first_c;
-        dataoffsets[i]=dataoffset;
+      prefetch_link(i, first_i, first_c, dataoffset);
+    }
+  }
+
+  // the headers, serial number and PCM length of link i
+  void prefetch_link(int i, Info first_i, Comment first_c, int dataoffset)
+      throws JOrbisException{
+    int ret;
+
+    if(first_i!=null&&first_c!=null&&i==0){
+      // we already grabbed the initial header earlier.  This just
+      // saves the waste of grabbing it again
+      vi[i]=first_i;
+      vc[i]=first_c;
+      dataoffsets[i]=dataoffset;
+    }
+    else{
+      // seek to the location of the initial header
+      seek_helper(offsets[i]); //!!!
+      vi[i]=new Info();
+      vc[i]=new Comment();
+      if(fetch_headers(vi[i], vc[i], null, null)==-1){
+        dataoffsets[i]=-1;
       }
       else{
-        // seek to the location of the initial header
-        seek_helper(offsets[i]); //!!!
-        vi[i]=new Info();
-        vc[i]=new Comment();
-        if(fetch_headers(vi[i], vc[i], null, null)==-1){
-          dataoffsets[i]=-1;
-        }
-        else{
-          dataoffsets[i]=offset;
-          os.clear();
-        }
+        dataoffsets[i]=offset;
+        os.clear();
       }
+    }
 
-      // get the serial number and PCM length of this link. To do this,
-      // get the last page of the stream
-      {
-        long end=offsets[i+1]; //!!!
-        seek_helper(end);
+    // get the serial number and PCM length of this link. To do this,
+    // get the last page of the stream
+    {
+      long end=offsets[i+1]; //!!!
+      seek_helper(end);
 
-        while(true){
-          ret=get_prev_page(og);
-          if(ret==-1){
-            // this should not be possible
-            vi[i].clear();
-            vc[i].clear();
-            break;
-          }
-          if(og.granulepos()!=-1){
-            serialnos[i]=og.serialno();
-            pcmlengths[i]=og.granulepos();
-            break;
-          }
+      while(true){
+        ret=get_prev_page(og);
+        if(ret==-1){
+          // this should not be possible
+          vi[i].clear();
+          vc[i].clear();
+          break;
+        }
+        if(og.granulepos()!=-1){
+          serialnos[i]=og.serialno();
+          pcmlengths[i]=og.granulepos();
+          break;
         }
       }
     }
@@ -376,7 +454,13 @@ public class VorbisFile{
   private int make_decode_ready(){
     if(decode_ready)
       System.exit(1);
-    vd.synthesis_init(vi[0]);
+    Info info=vi[seekable ? current_link : 0];
+    // a stream that can't seek reads each new link into vi[0] again, so
+    // the same Info may hold another setup; only a seekable file keeps
+    // one Info per link
+    if(!seekable||vd.vi!=info||vd.synthesis_restart()!=0){
+      vd.synthesis_init(info);
+    }
     vb.init(vd);
     decode_ready=true;
     return (0);
@@ -389,7 +473,6 @@ public class VorbisFile{
     long end;
     int ret;
     int dataoffset;
-    Page og=new Page();
     // is this even vorbis...?
     int[] foo=new int[1];
     ret=fetch_headers(initial_i, initial_c, foo, null);
@@ -412,6 +495,14 @@ public class VorbisFile{
     if(og.serialno()!=serialno){
       // Chained bitstream. Bisect-search each logical bitstream
       // section.  Do so based on serial number only
+      ret=open_parallel(initial_i, initial_c, serialno, dataoffset, end, og);
+      if(ret==0){
+        return (raw_seek(0));
+      }
+      if(ret==OV_EREAD){
+        clear();
+        return OV_EREAD;
+      }
       if(bisect_forward_serialno(0, 0, end+1, serialno, 0)<0){
         clear();
         return OV_EREAD;
@@ -425,7 +516,269 @@ public class VorbisFile{
       }
     }
     prefetch_all_headers(initial_i, initial_c, dataoffset);
-    return 0;
+    return (raw_seek(0));
+  }
+
+  // open_seekable() for a chained file, with the work spread over
+  // open_threads threads.  Each reads the file through its own stream
+  // with positional reads, so none of them moves a file pointer another
+  // one relies on.  The serial number is probed at evenly spread
+  // offsets first; links only start between probes that see different
+  // serial numbers, and each such stretch is bisected on its own.  Then
+  // the headers and PCM length of every link are fetched in parallel.
+  //
+  // 'end' is the offset of the last page, which 'last' holds.
+  //
+  // return: OV_EREAD) the file couldn't be read
+  //              -1) can't be done this way; nothing usable was set up
+  //               0) OK
+
+  int open_parallel(final Info first_i, final Comment first_c, int serialno,
+      final int dataoffset, long end, Page last){
+    if(open_threads<2||!(datasource instanceof SeekableInputStream)
+        ||((SeekableInputStream)datasource).raf==null)
+      return (-1);
+
+    try{
+      int probes=(int)Math.min(open_threads*8, end/CHUNKSIZE);
+      List<Callable<long[]>> probing=new ArrayList<Callable<long[]>>();
+      for(int k=1; k<probes; k++){
+        final long bisect=end*k/probes;
+        probing.add(new Callable<long[]>(){
+          public long[] call() throws Exception{
+            VorbisFile reader=reader();
+            Page page=new Page();
+            reader.seek_helper(bisect);
+            int ret=reader.get_next_page(page, -1);
+            if(ret==OV_EREAD)
+              throw new IOException("VorbisFile: read error at "+bisect);
+            if(ret<0)
+              return null;
+            return new long[] {ret, page.serialno()};
+          }
+        });
+      }
+      List<long[]> found=run_parallel(probing);
+
+      long[] pos=new long[probes+2];
+      int[] serial=new int[probes+2];
+      int n=0;
+      pos[n]=0;
+      serial[n++]=serialno;
+      for(int k=0; k<found.size(); k++){
+        long[] foo=found.get(k);
+        if(foo!=null&&foo[0]>pos[n-1]&&foo[0]<end){
+          pos[n]=foo[0];
+          serial[n++]=(int)foo[1];
+        }
+      }
+      pos[n]=end;
+      serial[n++]=last.serialno();
+
+      List<Callable<List<Long>>> bisecting=new ArrayList<Callable<List<Long>>>();
+      for(int k=0; k+1<n; k++){
+        if(serial[k]==serial[k+1])
+          continue;
+        final long begin=pos[k];
+        final long stop=pos[k+1]+1;
+        final int currentno=serial[k];
+        bisecting.add(new Callable<List<Long>>(){
+          public List<Long> call() throws Exception{
+            List<Long> starts=new ArrayList<Long>();
+            if(reader().bisect_links(begin, stop, currentno, starts)<0)
+              throw new IOException("VorbisFile: read error after "+begin);
+            return starts;
+          }
+        });
+      }
+      List<List<Long>> stretches=run_parallel(bisecting);
+
+      List<Long> starts=new ArrayList<Long>();
+      starts.add(Long.valueOf(0));
+      for(int k=0; k<stretches.size(); k++){
+        starts.addAll(stretches.get(k));
+      }
+
+      links=starts.size();
+      offsets=new long[links+1];
+      for(int i=0; i<links; i++){
+        offsets[i]=starts.get(i).longValue();
+      }
+      offsets[links]=end+last.header_len+last.body_len;
+
+      vi=new Info[links];
+      vc=new Comment[links];
+      dataoffsets=new long[links];
+      pcmlengths=new long[links];
+      serialnos=new int[links];
+
+      List<Callable<Object>> prefetching=new ArrayList<Callable<Object>>();
+      for(int i=0; i<links; i++){
+        final int link=i;
+        prefetching.add(new Callable<Object>(){
+          public Object call() throws Exception{
+            reader().prefetch_link(link, first_i, first_c, dataoffset);
+            return null;
+          }
+        });
+      }
+      run_parallel(prefetching);
+    }
+    catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      return (-1);
+    }
+    catch(IOException e){
+      // bisecting again on this thread would hit the same error
+      e.printStackTrace();
+      return OV_EREAD;
+    }
+    catch(Exception e){
+      e.printStackTrace();
+      return (-1);
+    }
+    return (0);
+  }
+
+  // run the jobs on up to open_threads threads, this one and the rest
+  // from open_pool, and return their results in order.  If a job
+  // fails, the jobs not started yet are dropped and, once every thread
+  // is done, the first failure is thrown
+  <T> List<T> run_parallel(final List<Callable<T>> jobs) throws Exception{
+    final Object[] results=new Object[jobs.size()];
+    final AtomicInteger next=new AtomicInteger();
+    Callable<Object> worker=new Callable<Object>(){
+      public Object call() throws Exception{
+        int i;
+        while((i=next.getAndIncrement())<jobs.size()){
+          try{
+            results[i]=jobs.get(i).call();
+          }
+          catch(Exception e){
+            next.set(jobs.size());
+            throw e;
+          }
+        }
+        return null;
+      }
+    };
+
+    List<Future<Object>> workers=new ArrayList<Future<Object>>();
+    int threads=Math.min(open_threads, jobs.size());
+    for(int k=1; k<threads; k++){
+      workers.add(open_pool().submit(worker));
+    }
+
+    Exception failed=null;
+    try{
+      worker.call();
+    }
+    catch(Exception e){
+      failed=e;
+    }
+    for(int k=0; k<workers.size(); k++){
+      try{
+        workers.get(k).get();
+      }
+      catch(ExecutionException e){
+        if(failed==null)
+          failed=(e.getCause() instanceof Exception ? (Exception)e.getCause() : e);
+      }
+      catch(InterruptedException e){
+        next.set(jobs.size());
+        if(failed==null)
+          failed=e;
+      }
+    }
+    if(failed!=null)
+      throw failed;
+
+    List<T> list=new ArrayList<T>(results.length);
+    for(int i=0; i<results.length; i++){
+      @SuppressWarnings("unchecked")
+      T result=(T)results[i];
+      list.add(result);
+    }
+    return list;
+  }
+
+  static synchronized ExecutorService open_pool(){
+    if(open_pool==null){
+      open_pool=Executors.newCachedThreadPool(new ThreadFactory(){
+        public Thread newThread(Runnable r){
+          // an open left running mustn't keep the VM alive
+          Thread thread=new Thread(r, "VorbisFile");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return open_pool;
+  }
+
+  // a VorbisFile on the same file and sharing the link tables, for one
+  // of the threads of open_parallel()
+  VorbisFile reader() throws IOException{
+    VorbisFile reader=new VorbisFile();
+    reader.datasource=((SeekableInputStream)datasource).positional();
+    reader.oy.init();
+    reader.seekable=true;
+    reader.links=links;
+    reader.offsets=offsets;
+    reader.vi=vi;
+    reader.vc=vc;
+    reader.dataoffsets=dataoffsets;
+    reader.pcmlengths=pcmlengths;
+    reader.serialnos=serialnos;
+    return reader;
+  }
+
+  // the offsets of the links that start after the one with serial
+  // number currentno at 'searched' and before 'end'.  This is
+  // bisect_forward_serialno() confined to one stretch of the file
+  int bisect_links(long searched, long end, int currentno, List<Long> starts){
+    Page page=og;
+    int ret;
+
+    while(true){
+      long endsearched=end;
+      long next=end;
+
+      while(searched<endsearched){
+        long bisect;
+        if(endsearched-searched<CHUNKSIZE){
+          bisect=searched;
+        }
+        else{
+          bisect=(searched+endsearched)/2;
+        }
+
+        seek_helper(bisect);
+        ret=get_next_page(page, -1);
+        if(ret==OV_EREAD)
+          return OV_EREAD;
+        if(ret<0||page.serialno()!=currentno){
+          endsearched=bisect;
+          if(ret>=0)
+            next=ret;
+        }
+        else{
+          searched=ret+page.header_len+page.body_len;
+        }
+      }
+      if(next>=end)
+        return 0;
+
+      seek_helper(next);
+      ret=get_next_page(page, -1);
+      if(ret==OV_EREAD)
+        return OV_EREAD;
+      if(ret<0)
+        return 0;
+      starts.add(Long.valueOf(next));
+      searched=offset;
+      currentno=page.serialno();
+    }
   }
 
   int open_nonseekable(){
@@ -447,7 +800,7 @@ public class VorbisFile{
 
   // clear out the current logical bitstream decoder
   void decode_clear(){
-    os.clear();
+    os.reset(); // keep the storage for the next os.init()
     vd.clear();
     vb.clear();
     decode_ready=false;
@@ -466,7 +819,6 @@ public class VorbisFile{
   //          1) got a packet 
 
   int process_packet(int readp){
-    Page og=new Page();
 
     // handle one packet.  Try to fetch it from current stream state
     // extract packets from page
@@ -474,7 +826,6 @@ public class VorbisFile{
       // process a packet if we can.  If the machine isn't loaded,
       // neither is a page
       if(decode_ready){
-        Packet op=new Packet();
         int result=os.packetout(op);
         long granulepos;
         // if(result==-1)return(-1); // hole in the data. For now, swallow
@@ -528,7 +879,8 @@ public class VorbisFile{
 
       if(readp==0)
         return (0);
-      if(get_next_page(og, -1)<0)
+      int pageoffset=get_next_page(og, -1);
+      if(pageoffset<0)
         return (0); // eof. leave unitialized
 
       // bitrate tracking; add the header's bytes here, the body bytes
@@ -587,6 +939,10 @@ public class VorbisFile{
         }
         make_decode_ready();
       }
+      if(seekable){
+        // every page read goes to the seek index for free
+        page_index(current_link).add(pageoffset, og.granulepos());
+      }
       os.pagein(og);
     }
   }
@@ -614,6 +970,7 @@ public class VorbisFile{
       serialnos=null;
     if(offsets!=null)
       offsets=null;
+    pageindex=null;
     oy.clear();
 
     return (0);
@@ -701,6 +1058,148 @@ public class VorbisFile{
     return ret;
   }
 
+  // the seekable open, with the link layout and the page index read from
+  // a sidecar written by write_sidecar() instead of searched for.  Only
+  // the headers of each link are read from the file itself.
+  //
+  // return: -1) no sidecar, or it doesn't match the file
+  //          0) OK
+
+  int open_sidecar(InputStream is, String file, String sidecar){
+    File f=new File(file);
+    File idx=new File(sidecar);
+    if(!idx.isFile())
+      return (-1);
+
+    DataInputStream in=null;
+    try{
+      in=new DataInputStream(new BufferedInputStream(new FileInputStream(idx)));
+      if(in.readInt()!=INDEX_MAGIC||in.readInt()!=INDEX_VERSION)
+        return (-1);
+      if(in.readLong()!=f.length()||in.readLong()!=f.lastModified())
+        return (-1);
+
+      int _links=in.readInt();
+      if(_links<=0)
+        return (-1);
+      long[] _offsets=new long[_links+1];
+      long[] _dataoffsets=new long[_links];
+      int[] _serialnos=new int[_links];
+      long[] _pcmlengths=new long[_links];
+      PageIndex[] _pageindex=new PageIndex[_links];
+      for(int i=0; i<_links; i++){
+        _offsets[i]=in.readLong();
+        _dataoffsets[i]=in.readLong();
+        _serialnos[i]=in.readInt();
+        _pcmlengths[i]=in.readLong();
+        _pageindex[i]=PageIndex.read(in);
+      }
+      _offsets[_links]=in.readLong();
+      if(_offsets[_links]>f.length())
+        return (-1);
+
+      datasource=is;
+      oy.init();
+      links=_links;
+      offsets=_offsets;
+      dataoffsets=_dataoffsets;
+      serialnos=_serialnos;
+      pcmlengths=_pcmlengths;
+      pageindex=_pageindex;
+      vi=new Info[links];
+      vc=new Comment[links];
+      seekable=true;
+    }
+    catch(IOException e){
+      return (-1);
+    }
+    finally{
+      if(in!=null){
+        try{
+          in.close();
+        }
+        catch(IOException e){
+        }
+      }
+    }
+
+    // the headers are small and sit at known offsets
+    for(int i=0; i<links; i++){
+      vi[i]=new Info();
+      vc[i]=new Comment();
+      if(dataoffsets[i]!=-1){
+        int[] foo=new int[1];
+        seek_helper(offsets[i]);
+        if(fetch_headers(vi[i], vc[i], foo, null)!=0||foo[0]!=serialnos[i]){
+          datasource=null;
+          seekable=false;
+          clear();
+          return (-1);
+        }
+        os.clear();
+      }
+    }
+    raw_seek(0);
+    return (0);
+  }
+
+  // write the link layout and the page index of this (seekable) file to
+  // a sidecar for open_sidecar().  The file's length and modification
+  // time go with it, so a sidecar of an older version of the file is
+  // ignored.  The sidecar is written under a temporary name first and
+  // then renamed, so a reader never sees half of it.
+  //
+  // returns zero on success, nonzero on failure
+
+  public int write_sidecar(String file, String sidecar){
+    if(!seekable)
+      return (-1);
+    File f=new File(file);
+    File idx=new File(sidecar);
+    File tmp=new File(sidecar+".tmp");
+
+    DataOutputStream out=null;
+    try{
+      out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      out.writeLong(f.length());
+      out.writeLong(f.lastModified());
+      out.writeInt(links);
+      for(int i=0; i<links; i++){
+        out.writeLong(offsets[i]);
+        out.writeLong(dataoffsets[i]);
+        out.writeInt(serialnos[i]);
+        out.writeLong(pcmlengths[i]);
+        page_index(i).write(out);
+      }
+      out.writeLong(offsets[links]);
+      out.close();
+      out=null;
+    }
+    catch(IOException e){
+      tmp.delete();
+      return (-1);
+    }
+    finally{
+      if(out!=null){
+        try{
+          out.close();
+        }
+        catch(IOException e){
+        }
+        tmp.delete();
+      }
+    }
+
+    idx.delete();
+    if(!tmp.renameTo(idx)){
+      tmp.delete();
+      return (-1);
+    }
+    return (0);
+  }
+
   // How many logical bitstreams in this physical bitstream?
   public int streams(){
     return links;
@@ -943,8 +1442,23 @@ public class VorbisFile{
       long end=offsets[link+1];
       long begin=offsets[link];
       int best=(int)begin;
+      long endtime=pcmlengths[link];
+      long begintime=0;
+
+      // the index already knows pages on both sides of the target; only
+      // the stretch between them is left to bisect
+      PageIndex index=page_index(link);
+      int i=index.find(target);
+      if(i>=0){
+        best=(int)index.offset[i];
+        begin=best;
+        begintime=index.granulepos[i];
+      }
+      if(i+1<index.entries){
+        end=index.offset[i+1];
+        endtime=index.granulepos[i+1];
+      }
 
-      Page og=new Page();
       while(begin<end){
         long bisect;
         int ret;
@@ -952,29 +1466,51 @@ public class VorbisFile{
         if(end-begin<CHUNKSIZE){
           bisect=begin;
         }
-        else{
+        else if(endtime<=begintime){
           bisect=(end+begin)/2;
         }
+        else{
+          // guess where the target is from the granule positions at both
+          // ends, a little early so the page is found reading forward.
+          // Each probe can be a round trip on a remote source, and this
+          // needs far fewer than halving does.  Staying off the very
+          // ends keeps a bad guess from costing more than halving
+          long span=end-begin;
+          bisect=begin
+              +(long)((double)(target-begintime)*span/(endtime-begintime))
+              -CHUNKSIZE;
+          if(bisect<begin+span/8)
+            bisect=begin+span/8;
+          if(bisect>end-span/8)
+            bisect=end-span/8;
+        }
 
         seek_helper(bisect);
         ret=get_next_page(og, end-bisect);
 
-        if(ret==-1){
+        if(ret<0){
           end=bisect;
         }
         else{
           long granulepos=og.granulepos();
+          if(og.serialno()==serialnos[link])
+            index.add(ret, granulepos);
           if(granulepos<target){
             best=ret; // raw offset of packet with granulepos
             begin=offset; // raw offset of next packet
+            if(granulepos>=0)
+              begintime=granulepos;
           }
           else{
             end=bisect;
+            endtime=granulepos;
           }
         }
       }
-      // found our page. seek to it (call raw_seek).
-      if(raw_seek(best)!=0){
+      // found our page.  Step over the packets up to the target without
+      // decoding them; if the pages don't allow that, seek to it (call
+      // raw_seek) and decode from there.
+      if(skip_packets(link, best, target)!=0&&raw_seek(best)!=0){
         //goto seek_error;
         pcm_offset=-1;
         decode_clear();
@@ -983,7 +1519,7 @@ public class VorbisFile{
     }
 
     // verify result
-    if(pcm_offset>=pos){
+    if(pcm_offset>pos){
       //goto seek_error;
       pcm_offset=-1;
       decode_clear();
@@ -1000,9 +1536,7 @@ public class VorbisFile{
     // logical bitstream boundary with abandon is OK.
     while(pcm_offset<pos){
       int target=(int)(pos-pcm_offset);
-      float[][][] _pcm=new float[1][][];
-      int[] _index=new int[getInfo(-1).channels];
-      int samples=vd.synthesis_pcmout(_pcm, _index);
+      int samples=(decode_ready ? vd.synthesis_pcmout(null, null) : 0);
 
       if(samples>target)
         samples=target;
@@ -1023,9 +1557,161 @@ public class VorbisFile{
     //return -1;
   }
 
+  // the seek index of a link, made on first use
+  PageIndex page_index(int link){
+    if(pageindex==null)
+      pageindex=new PageIndex[links];
+    if(pageindex[link]==null){
+      long spacing=(long)(index_interval*(vi[link].rate>0 ? vi[link].rate : 1));
+      pageindex[link]=new PageIndex(spacing);
+    }
+    return pageindex[link];
+  }
+
+  // set how far apart (in seconds) the seek index keeps its pages.  A
+  // tighter index costs memory and leaves less to bisect per seek.  Only
+  // affects links the index hasn't been made for yet
+  public void index_interval(float seconds){
+    index_interval=seconds;
+  }
+
+  // read every page of the stream once, so the seek index covers all of
+  // it and no seek needs to bisect further than one index interval.
+  // Otherwise the index only grows with the pages that seeks and reads
+  // come across.  Leaves the decoder where raw_seek(0) would.
+  //
+  // returns zero on success, nonzero on failure
+
+  public int build_index(){
+    if(!seekable)
+      return (-1);
+    for(int link=0; link<links; link++){
+      PageIndex index=page_index(link);
+      if(index.complete)
+        continue;
+      seek_helper(offsets[link]);
+      while(offset<offsets[link+1]){
+        int ret=get_next_page(og, offsets[link+1]-offset);
+        if(ret==OV_EREAD)
+          return (-1);
+        if(ret<0)
+          break;
+        if(og.serialno()==serialnos[link])
+          index.add(ret, og.granulepos());
+      }
+      index.complete=true;
+    }
+    return (raw_seek(0));
+  }
+
+  // load the decoding machine at the page starting at 'best', whose
+  // granulepos is below target, and take it to the packet holding
+  // target.  A packet's length follows from its mode bits alone (each
+  // one adds a quarter of its own and of the previous blocksize), so
+  // the packets in between are only counted; the one before the target
+  // packet is decoded as preroll for the overlap, then the target packet
+  // itself.  What is left to discard is less than one long block.
+  //
+  // returns 0 with pcm_offset at or before the target, -1 if the pages
+  // don't carry what's needed (stream start, the final page, holes or
+  // granulepos that don't add up); the caller then falls back to
+  // raw_seek()
+
+  int skip_packets(int link, long best, long target){
+    Info info=vi[link];
+    int lastW=-1;
+
+    pcm_offset=-1;
+    decode_clear();
+    seek_helper(best);
+    if(get_next_page(og, -1)<0||og.serialno()!=serialnos[link]
+        ||og.eos()!=0)
+      return (-1);
+
+    long granulepos=og.granulepos();
+    if(granulepos<0)
+      return (-1);
+    boolean first=true;
+
+    current_serialno=serialnos[link];
+    current_link=link;
+    os.init(current_serialno);
+    os.reset();
+    make_decode_ready();
+    os.pagein(og);
+
+    while(true){
+      int result=os.packetout(op);
+      if(result==0){
+        // the packets counted so far must end where the page says
+        if(!first&&og.granulepos()!=-1&&og.granulepos()!=granulepos)
+          break;
+        int ret=get_next_page(og, -1);
+        if(ret<0||og.serialno()!=current_serialno||og.eos()!=0)
+          break;
+        page_index(link).add(ret, og.granulepos());
+        os.pagein(og);
+        first=false;
+        continue;
+      }
+      if(result<0){
+        // a hole loses track of the position.  The packets on the
+        // first page only matter as preroll, so there it's harmless
+        if(!first)
+          break;
+        lastW=-1;
+        continue;
+      }
+
+      int W=info.blocksize(op, opb);
+      if(W<0)
+        break;
+      if(!first){
+        if(lastW<0)
+          break;
+        if(granulepos+lastW/4+W/4>=target){
+          // op holds the target; run the preroll packet and op
+          // through the decoder
+          if(vb.synthesis(prev)!=0)
+            break;
+          vd.synthesis_blockin(vb);
+          if(vb.synthesis(op)!=0)
+            break;
+          vd.synthesis_blockin(vb);
+          granulepos+=lastW/4+W/4;
+          granulepos-=vd.synthesis_pcmout(null, null);
+          for(int i=0; i<link; i++){
+            granulepos+=pcmlengths[i];
+          }
+          pcm_offset=granulepos;
+          return (0);
+        }
+        granulepos+=lastW/4+W/4;
+      }
+
+      // keep a copy; the stream state reuses its storage on the next
+      // page
+      if(prev.packet_base==null||prev.packet_base.length<op.bytes)
+        prev.packet_base=new byte[op.bytes];
+      System.arraycopy(op.packet_base, op.packet, prev.packet_base, 0,
+          op.bytes);
+      prev.packet=0;
+      prev.bytes=op.bytes;
+      prev.b_o_s=op.b_o_s;
+      prev.e_o_s=op.e_o_s;
+      prev.granulepos=op.granulepos;
+      prev.packetno=op.packetno;
+      lastW=W;
+    }
+
+    pcm_offset=-1;
+    decode_clear();
+    return (-1);
+  }
+
   // seek to a playback time relative to the decompressed pcm stream 
   // returns zero on success, nonzero on failure
-  int time_seek(float seconds){
+  public int time_seek(float seconds){
     // translate time to PCM position and call pcm_seek
 
     int link=-1;
@@ -1205,114 +1891,169 @@ public class VorbisFile{
 
   int read(byte[] buffer, int length, int bigendianp, int word, int sgned,
       int[] bitstream){
-    int host_endian=host_is_big_endian();
-    int index=0;
+    int ret=readBytes(buffer, 0, length, bigendianp!=0, sgned!=0, word);
+    if(ret>0&&bitstream!=null)
+      bitstream[0]=current_link;
+    return ret;
+  }
+
+  // The read calls below are the public face of read() above, one per
+  // sample format.  They fill the caller's buffer with as much of the
+  // next decoded packet as fits and return the amount, 0 at the end of
+  // the stream or -1 for a hole in the data.  Samples are interleaved
+  // (except for readFloats) and each call returns data of one link
+  // only; getInfo(-1) tells its channels and rate.  They allocate
+  // nothing once the first packet has been decoded.
+
+  // 8 or 16 bit samples, packed into bytes.
+  //
+  // input values: offset) where in buffer to start
+  //               length) the most bytes to return
+  //               bigendian) MSB first (true) or LSB first (false)
+  //               signed) signed samples, or offset binary
+  //               word) bytes per sample, 1 or 2
+  //
+  // returns the number of bytes placed into buffer
+
+  public int readBytes(byte[] buffer, int offset, int length,
+      boolean bigendian, boolean signed, int word){
+    int samples=fetch_pcm();
+    if(samples<=0)
+      return samples;
+
+    float[][] pcm=_pcm[0];
+    int channels=vi[seekable ? current_link : 0].channels;
+    int bytespersample=word*channels;
+    if(samples>length/bytespersample)
+      samples=length/bytespersample;
+
+    // a tight loop to pack each size; it's faster channel by channel
+    int val;
+    if(word==1){
+      int off=(signed ? 0 : 128);
+      for(int i=0; i<channels; i++){
+        float[] src=pcm[i];
+        int s=_index[i];
+        int dest=offset+i;
+        for(int j=0; j<samples; j++){
+          val=(int)(src[s+j]*128.+0.5);
+          if(val>127)
+            val=127;
+          else if(val<-128)
+            val=-128;
+          buffer[dest]=(byte)(val+off);
+          dest+=channels;
+        }
+      }
+    }
+    else{
+      int off=(signed ? 0 : 32768);
+      int hi=(bigendian ? 0 : 1);
+      int lo=1-hi;
+      for(int i=0; i<channels; i++){
+        float[] src=pcm[i];
+        int s=_index[i];
+        int dest=offset+i*2;
+        for(int j=0; j<samples; j++){
+          val=(int)(src[s+j]*32768.+0.5);
+          if(val>32767)
+            val=32767;
+          else if(val<-32768)
+            val=-32768;
+          val+=off;
+          buffer[dest+hi]=(byte)(val>>>8);
+          buffer[dest+lo]=(byte)val;
+          dest+=channels*2;
+        }
+      }
+    }
+
+    vd.synthesis_read(samples);
+    pcm_offset+=samples;
+    return (samples*bytespersample);
+  }
+
+  // signed 16 bit samples.
+  //
+  // input values: offset) where in buffer to start
+  //               length) the most shorts to return
+  //
+  // returns the number of shorts (samples times channels) placed into
+  // buffer
+
+  public int readShorts(short[] buffer, int offset, int length){
+    int samples=fetch_pcm();
+    if(samples<=0)
+      return samples;
+
+    float[][] pcm=_pcm[0];
+    int channels=vi[seekable ? current_link : 0].channels;
+    if(samples>length/channels)
+      samples=length/channels;
+
+    int val;
+    for(int i=0; i<channels; i++){
+      float[] src=pcm[i];
+      int s=_index[i];
+      int dest=offset+i;
+      for(int j=0; j<samples; j++){
+        val=(int)(src[s+j]*32768.+0.5);
+        if(val>32767)
+          val=32767;
+        else if(val<-32768)
+          val=-32768;
+        buffer[dest]=(short)val;
+        dest+=channels;
+      }
+    }
+
+    vd.synthesis_read(samples);
+    pcm_offset+=samples;
+    return (samples*channels);
+  }
+
+  // the decoder's float samples, nominally -1 to 1, one array per
+  // channel.
+  //
+  // input values: offset) where in each channel's array to start
+  //               length) the most samples per channel to return
+  //
+  // returns the number of samples placed into each channel's array
+
+  public int readFloats(float[][] buffer, int offset, int length){
+    int samples=fetch_pcm();
+    if(samples<=0)
+      return samples;
+
+    float[][] pcm=_pcm[0];
+    int channels=vi[seekable ? current_link : 0].channels;
+    if(samples>length)
+      samples=length;
+
+    for(int i=0; i<channels; i++){
+      System.arraycopy(pcm[i], _index[i], buffer[i], offset, samples);
+    }
+
+    vd.synthesis_read(samples);
+    pcm_offset+=samples;
+    return (samples);
+  }
 
+  // decode packets until there are samples to return; they are left in
+  // _pcm and _index.
+  //
+  // return: -1) error/hole in data
+  //          0) EOF
+  //          n) number of samples ready
+  int fetch_pcm(){
     while(true){
       if(decode_ready){
-        float[][] pcm;
-        float[][][] _pcm=new float[1][][];
-        int[] _index=new int[getInfo(-1).channels];
+        int channels=vi[seekable ? current_link : 0].channels;
+        if(_index==null||_index.length<channels)
+          _index=new int[channels];
         int samples=vd.synthesis_pcmout(_pcm, _index);
-        pcm=_pcm[0];
-        if(samples!=0){
-          // yay! proceed to pack data into the byte buffer
-          int channels=getInfo(-1).channels;
-          int bytespersample=word*channels;
-          if(samples>length/bytespersample)
-            samples=length/bytespersample;
-
-          // a tight loop to pack each size
-          {
-            int val;
-            if(word==1){
-              int off=(sgned!=0 ? 0 : 128);
-              for(int j=0; j<samples; j++){
-                for(int i=0; i<channels; i++){
-                  val=(int)(pcm[i][_index[i]+j]*128.+0.5);
-                  if(val>127)
-                    val=127;
-                  else if(val<-128)
-                    val=-128;
-                  buffer[index++]=(byte)(val+off);
-                }
-              }
-            }
-            else{
-              int off=(sgned!=0 ? 0 : 32768);
-
-              if(host_endian==bigendianp){
-                if(sgned!=0){
-                  for(int i=0; i<channels; i++){ // It's faster in this order
-                    int src=_index[i];
-                    int dest=i;
-                    for(int j=0; j<samples; j++){
-                      val=(int)(pcm[i][src+j]*32768.+0.5);
-                      if(val>32767)
-                        val=32767;
-                      else if(val<-32768)
-                        val=-32768;
-                      buffer[dest]=(byte)(val>>>8);
-                      buffer[dest+1]=(byte)(val);
-                      dest+=channels*2;
-                    }
-                  }
-                }
-                else{
-                  for(int i=0; i<channels; i++){
-                    float[] src=pcm[i];
-                    int dest=i;
-                    for(int j=0; j<samples; j++){
-                      val=(int)(src[j]*32768.+0.5);
-                      if(val>32767)
-                        val=32767;
-                      else if(val<-32768)
-                        val=-32768;
-                      buffer[dest]=(byte)((val+off)>>>8);
-                      buffer[dest+1]=(byte)(val+off);
-                      dest+=channels*2;
-                    }
-                  }
-                }
-              }
-              else if(bigendianp!=0){
-                for(int j=0; j<samples; j++){
-                  for(int i=0; i<channels; i++){
-                    val=(int)(pcm[i][j]*32768.+0.5);
-                    if(val>32767)
-                      val=32767;
-                    else if(val<-32768)
-                      val=-32768;
-                    val+=off;
-                    buffer[index++]=(byte)(val>>>8);
-                    buffer[index++]=(byte)val;
-                  }
-                }
-              }
-              else{
-                //int val;
-                for(int j=0; j<samples; j++){
-                  for(int i=0; i<channels; i++){
-                    val=(int)(pcm[i][j]*32768.+0.5);
-                    if(val>32767)
-                      val=32767;
-                    else if(val<-32768)
-                      val=-32768;
-                    val+=off;
-                    buffer[index++]=(byte)val;
-                    buffer[index++]=(byte)(val>>>8);
-                  }
-                }
-              }
-            }
-          }
-
-          vd.synthesis_read(samples);
-          pcm_offset+=samples;
-          if(bitstream!=null)
-            bitstream[0]=current_link;
-          return (samples*bytespersample);
-        }
+        if(samples!=0)
+          return samples;
       }
 
       // suck in another packet
@@ -1339,7 +2080,11 @@ public class VorbisFile{
     datasource.close();
   }
 
-  class SeekableInputStream extends InputStream{
+  // A stream VorbisFile(InputStream, byte[], int) can seek in, which
+  // makes the VorbisFile seekable.  This one reads a local file;
+  // subclasses may read anything that can be read from any position by
+  // overriding read(byte[], int, int), seek(), tell() and getLength()
+  public static class SeekableInputStream extends InputStream{
     java.io.RandomAccessFile raf=null;
     final String mode="r";
 
@@ -1347,6 +2092,15 @@ public class VorbisFile{
       raf=new java.io.RandomAccessFile(file, mode);
     }
 
+    protected SeekableInputStream(){
+    }
+
+    // another stream on the same data with a position of its own, for
+    // reading from another thread
+    public SeekableInputStream positional() throws java.io.IOException{
+      return new PositionalInputStream(raf.getChannel(), raf.length());
+    }
+
     public int read() throws java.io.IOException{
       return raf.read();
     }
@@ -1394,4 +2148,60 @@ public class VorbisFile{
     }
   }
 
+  // reads with FileChannel.read(dst, position), which any number of
+  // threads may do at once on one channel.  The channel belongs to the
+  // stream it came from, so close() leaves it open
+  static class PositionalInputStream extends SeekableInputStream{
+    FileChannel channel;
+    long length;
+    long pos=0;
+
+    PositionalInputStream(FileChannel channel, long length){
+      this.channel=channel;
+      this.length=length;
+    }
+
+    public int read() throws java.io.IOException{
+      byte[] foo=new byte[1];
+      return (read(foo, 0, 1)==1 ? foo[0]&0xff : -1);
+    }
+
+    public int read(byte[] buf) throws java.io.IOException{
+      return read(buf, 0, buf.length);
+    }
+
+    public int read(byte[] buf, int s, int len) throws java.io.IOException{
+      if(len==0)
+        return 0;
+      int ret=channel.read(ByteBuffer.wrap(buf, s, len), pos);
+      if(ret>0)
+        pos+=ret;
+      return ret;
+    }
+
+    public long skip(long n) throws java.io.IOException{
+      pos+=n;
+      return n;
+    }
+
+    public long getLength() throws java.io.IOException{
+      return length;
+    }
+
+    public long tell() throws java.io.IOException{
+      return pos;
+    }
+
+    public int available() throws java.io.IOException{
+      return (pos>=length) ? 0 : 1;
+    }
+
+    public void close() throws java.io.IOException{
+    }
+
+    public void seek(long pos) throws java.io.IOException{
+      this.pos=pos;
+    }
+  }
+
 }
@@ -0,0 +1,346 @@
+package net.droidlabs.audio.ogg;
+
+import com.jcraft.jorbis.VorbisFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A file on an HTTP server that <code>VorbisFile</code> can seek in. Pass it
+ * to <code>new VorbisFile(stream, null, 0)</code> and <code>pcm_seek</code>,
+ * <code>time_seek</code> and the other seekable calls work on it.
+ * <p/>
+ * The file is fetched in blocks with Range requests, and the blocks are kept
+ * in a small LRU cache. A read that follows on from the block before it
+ * fetches a few blocks at once, so playing needs few requests. A read
+ * anywhere else fetches a single block, which is all a seek probe needs.
+ * The seek itself guesses the byte offset of a granule position from the
+ * ones it has seen, so a seek takes only a few requests.
+ * <p/>
+ * With a <code>StreamCache</code>, blocks are looked for on disk before they
+ * are fetched, and fetched blocks are written there. Blocks are fetched
+ * through the source of the cache, or the default <code>StreamSource</code>.
+ */
+public class HttpSeekableStream extends VorbisFile.SeekableInputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
+    public static final int DEFAULT_CACHE_BLOCKS = 64;
+
+    // Blocks fetched in one request while reading straight on.
+    private static final int READ_AHEAD_BLOCKS = 4;
+
+    private final Blocks blocks;
+    private long position = 0;
+
+    public HttpSeekableStream(URL url) throws IOException
+    {
+        this(url, DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_BLOCKS);
+    }
+
+    /**
+     * Fetches the first block, which also tells the length of the file.
+     *
+     * @param url         the file
+     * @param blockSize   the bytes fetched per block
+     * @param cacheBlocks the most blocks kept
+     * @throws IOException if the file can't be fetched or the server doesn't
+     *                     serve ranges
+     */
+    public HttpSeekableStream(URL url, int blockSize, int cacheBlocks) throws IOException
+    {
+        this(url, blockSize, cacheBlocks, null);
+    }
+
+    /**
+     * Like <code>HttpSeekableStream(url, blockSize, cacheBlocks)</code>, but
+     * keeps the fetched blocks on disk as well.
+     *
+     * @param url         the file
+     * @param blockSize   the bytes fetched per block
+     * @param cacheBlocks the most blocks kept in memory
+     * @param cache       the disk cache, or null
+     * @throws IOException if the file can't be fetched or the server doesn't
+     *                     serve ranges
+     */
+    public HttpSeekableStream(URL url, int blockSize, int cacheBlocks, StreamCache cache) throws IOException
+    {
+        this.blocks = new Blocks(url, blockSize, Math.max(cacheBlocks, READ_AHEAD_BLOCKS), cache);
+        this.blocks.get(0);
+
+        if (blocks.length == Long.MAX_VALUE)
+        {
+            throw new IOException("The server doesn't tell the length of " + url);
+        }
+    }
+
+    private HttpSeekableStream(Blocks blocks)
+    {
+        this.blocks = blocks;
+    }
+
+    /**
+     * Returns another stream on the same file with a position of its own. The
+     * two share the block cache and may be read from different threads.
+     */
+    public VorbisFile.SeekableInputStream positional()
+    {
+        return new HttpSeekableStream(blocks);
+    }
+
+    public int read() throws IOException
+    {
+        byte[] one = new byte[1];
+
+        return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+    }
+
+    public int read(byte[] buffer) throws IOException
+    {
+        return read(buffer, 0, buffer.length);
+    }
+
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+
+        if (position >= blocks.length)
+        {
+            return -1;
+        }
+
+        byte[] block = blocks.get(position / blocks.blockSize);
+        int start = (int) (position % blocks.blockSize);
+
+        if (start >= block.length)
+        {
+            return -1;
+        }
+
+        int count = Math.min(length, block.length - start);
+        System.arraycopy(block, start, buffer, offset, count);
+        position += count;
+
+        return count;
+    }
+
+    public long skip(long n)
+    {
+        position += n;
+
+        return n;
+    }
+
+    public long getLength()
+    {
+        return blocks.length;
+    }
+
+    public long tell()
+    {
+        return position;
+    }
+
+    public void seek(long pos)
+    {
+        position = pos;
+    }
+
+    public int available()
+    {
+        return position < blocks.length ? 1 : 0;
+    }
+
+    public void close()
+    {
+        if (blocks.cache != null)
+        {
+            blocks.cache.flush();
+        }
+    }
+
+    /**
+     * Returns the number of Range requests made so far.
+     *
+     * @return the number of requests
+     */
+    public int getRequestCount()
+    {
+        return blocks.requests;
+    }
+
+    /**
+     * Returns the number of bytes fetched so far.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesFetched()
+    {
+        return blocks.bytesFetched;
+    }
+
+    /*
+     * The cache of fetched blocks, shared by the streams made with
+     * positional().
+     */
+    private static class Blocks
+    {
+        private final URL url;
+        private final int blockSize;
+        private final LinkedHashMap<Long, byte[]> memory;
+        private final StreamCache cache;
+        private final StreamSource source;
+
+        // Held over network reads, so a lock rather than a monitor.
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Unknown until the first response.
+        private volatile long length = Long.MAX_VALUE;
+        private volatile int requests = 0;
+        private volatile long bytesFetched = 0;
+
+        Blocks(URL url, int blockSize, final int cacheBlocks, StreamCache cache)
+        {
+            this.url = url;
+            this.blockSize = blockSize;
+            this.cache = cache;
+            this.source = cache != null ? cache.getStreamSource() : StreamSource.getDefault();
+            this.memory = new LinkedHashMap<Long, byte[]>(cacheBlocks * 2, 0.75f, true)
+            {
+                protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest)
+                {
+                    return size() > cacheBlocks;
+                }
+            };
+
+            if (cache != null && cache.getLength(url) >= 0)
+            {
+                length = cache.getLength(url);
+            }
+        }
+
+        byte[] get(long index) throws IOException
+        {
+            lock.lock();
+            try
+            {
+                byte[] block = memory.get(index);
+
+                if (block != null)
+                {
+                    return block;
+                }
+
+                if (cache != null && length != Long.MAX_VALUE)
+                {
+                    long start = index * blockSize;
+                    block = new byte[(int) Math.max(0, Math.min(blockSize, length - start))];
+
+                    if (block.length > 0 && cache.read(url, start, block, 0, block.length))
+                    {
+                        memory.put(index, block);
+                        return block;
+                    }
+                }
+
+                // Reading straight on: fetch the next few blocks as well.
+                int count = 1;
+
+                if (index > 0 && memory.containsKey(index - 1))
+                {
+                    while (count < READ_AHEAD_BLOCKS && !memory.containsKey(index + count))
+                    {
+                        count++;
+                    }
+                }
+
+                fetch(index, count);
+
+                block = memory.get(index);
+
+                return block != null ? block : new byte[0];
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void fetch(long index, int count) throws IOException
+        {
+            long start = index * blockSize;
+            long end = Math.min(start + (long) count * blockSize, length);
+
+            if (start >= end)
+            {
+                return;
+            }
+
+            StreamSource.Response response = source.open(url, start, end);
+            requests++;
+
+            int code = response.getStatusCode();
+
+            if (code == 416)
+            {
+                // Past the end of the file.
+                response.close();
+                length = Math.min(length, start);
+                return;
+            }
+
+            if (code != 206)
+            {
+                response.close();
+                throw new IOException("Range request for " + url + " answered with " + code);
+            }
+
+            if (response.getLength() >= 0)
+            {
+                length = response.getLength();
+                end = Math.min(end, length);
+            }
+
+            InputStream in = response;
+
+            try
+            {
+                for (long block = start; block < end; block += blockSize)
+                {
+                    byte[] data = new byte[(int) Math.min(blockSize, end - block)];
+                    int got = 0;
+
+                    while (got < data.length)
+                    {
+                        int n = in.read(data, got, data.length - got);
+
+                        if (n < 0)
+                        {
+                            throw new IOException("Range response for " + url + " ended early");
+                        }
+
+                        got += n;
+                    }
+
+                    bytesFetched += got;
+                    memory.put(block / blockSize, data);
+
+                    if (cache != null)
+                    {
+                        cache.write(url, block, data, 0, data.length, length);
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+}
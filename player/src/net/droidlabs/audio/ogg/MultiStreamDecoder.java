@@ -0,0 +1,924 @@
+package net.droidlabs.audio.ogg;
+
+import android.util.Log;
+import com.jcraft.jogg.Packet;
+import com.jcraft.jogg.Page;
+import com.jcraft.jogg.StreamState;
+import com.jcraft.jogg.SyncState;
+import com.jcraft.jorbis.Block;
+import com.jcraft.jorbis.Comment;
+import com.jcraft.jorbis.DspState;
+import com.jcraft.jorbis.Info;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes many live HTTP streams at once without a thread per stream. A few
+ * I/O threads wait on all the sockets with a selector and pass the bytes that
+ * arrive to the stream they belong to. A fixed pool of decode threads turns
+ * them into PCM, one task per stream at a time, so a stream's
+ * <code>SyncState</code> and decoder are never used by two threads at once.
+ * <p/>
+ * When a stream has more bytes waiting than its decoder has taken, its socket
+ * is not read until the decoder catches up, so a slow decoder slows down the
+ * server instead of filling the memory.
+ * <p/>
+ * Only plain http URLs are supported. Metadata is asked for and taken out of
+ * the stream as in <code>StreamSource</code>.
+ */
+public class MultiStreamDecoder
+{
+    public static final String TAG = MultiStreamDecoder.class.getSimpleName();
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_PENDING_BYTES = 256 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+    // Queued after the last bytes of a stream.
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Receives what is decoded from the streams. The methods are called on a
+     * decode thread, never for the same stream on two threads at once.
+     */
+    public interface Callback
+    {
+        /**
+         * The headers of a stream, or of the next link of a chained stream,
+         * were read.
+         */
+        public void headerRead(Stream stream, Info info, Comment comment);
+
+        /**
+         * Samples were decoded. They are <code>pcm[channel][index[channel] +
+         * i]</code> for i below <code>samples</code>, and are only valid
+         * during the call.
+         */
+        public void samplesDecoded(Stream stream, float[][] pcm, int[] index, int samples);
+
+        /**
+         * The stream ended or failed. Nothing more comes for it.
+         *
+         * @param cause the failure, or null if the stream just ended
+         */
+        public void streamEnded(Stream stream, IOException cause);
+    }
+
+    private final Reactor[] reactors;
+    private final Thread[] reactorThreads;
+    private final ExecutorService decoders;
+    private final AtomicInteger nextReactor = new AtomicInteger();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /**
+     * Starts the I/O threads and the decode pool.
+     *
+     * @param ioThreads     the threads that wait on the sockets
+     * @param decodeThreads the most streams decoded at the same time
+     * @throws IOException if a selector can't be opened
+     */
+    public MultiStreamDecoder(int ioThreads, int decodeThreads) throws IOException
+    {
+        reactors = new Reactor[Math.max(1, ioThreads)];
+        reactorThreads = new Thread[reactors.length];
+
+        for (int i = 0; i < reactors.length; i++)
+        {
+            reactors[i] = new Reactor(Selector.open());
+
+            reactorThreads[i] = new Thread(reactors[i], TAG + "-io-" + i);
+            reactorThreads[i].setDaemon(true);
+            reactorThreads[i].start();
+        }
+
+        final AtomicInteger decoderNumber = new AtomicInteger();
+
+        decoders = Executors.newFixedThreadPool(Math.max(1, decodeThreads), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, TAG + "-decode-" + decoderNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Connects to a stream and decodes it until it ends or is closed.
+     *
+     * @param url      an http URL
+     * @param callback what receives the decoded samples
+     * @return the stream
+     * @throws IOException if the host can't be resolved or the socket can't
+     *                     be opened
+     */
+    public Stream open(URL url, Callback callback) throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("The decoder is closed.");
+        }
+
+        if (!url.getProtocol().equals("http"))
+        {
+            throw new IOException("Only http streams can be multiplexed: " + url);
+        }
+
+        int port = url.getPort() != -1 ? url.getPort() : 80;
+        InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+
+        if (address.isUnresolved())
+        {
+            throw new IOException("Could not resolve " + url.getHost());
+        }
+
+        SocketChannel channel = SocketChannel.open();
+
+        try
+        {
+            channel.configureBlocking(false);
+            channel.socket().setReceiveBufferSize(64 * 1024);
+            channel.connect(address);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+
+        Reactor reactor = reactors[(nextReactor.getAndIncrement() & Integer.MAX_VALUE) % reactors.length];
+        Stream stream = new Stream(url, callback, channel, reactor);
+
+        openStreams.incrementAndGet();
+        reactor.register(stream);
+
+        return stream;
+    }
+
+    /**
+     * Returns the number of streams that have not ended yet.
+     *
+     * @return the number of streams
+     */
+    public int getOpenStreamCount()
+    {
+        return openStreams.get();
+    }
+
+    /**
+     * Closes every stream and stops the threads.
+     */
+    public void close()
+    {
+        closed = true;
+
+        for (Reactor reactor : reactors)
+        {
+            reactor.shutdown();
+        }
+
+        try
+        {
+            // The I/O threads end their streams before the pool goes.
+            for (Thread thread : reactorThreads)
+            {
+                thread.join(5000);
+            }
+
+            decoders.shutdown();
+            decoders.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * An I/O thread. Changes to its keys are queued and carried out on the
+     * thread itself, since a selector may not be changed while it selects.
+     */
+    private class Reactor implements Runnable
+    {
+        private final Selector selector;
+        private final Queue<Runnable> changes = new ConcurrentLinkedQueue<Runnable>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private volatile boolean running = true;
+        private long lastTimeoutCheck = 0;
+
+        Reactor(Selector selector)
+        {
+            this.selector = selector;
+        }
+
+        void register(final Stream stream)
+        {
+            change(new Runnable()
+            {
+                public void run()
+                {
+                    // A connection to the local host may be made at once.
+                    int interest = stream.channel.isConnected() ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT;
+
+                    try
+                    {
+                        stream.key = stream.channel.register(selector, interest, stream);
+                    }
+                    catch (IOException e)
+                    {
+                        stream.fail(e);
+                    }
+                }
+            });
+        }
+
+        /*
+         * Starts reading a stream again once its decoder has caught up.
+         */
+        void resume(final Stream stream)
+        {
+            change(new Runnable()
+            {
+                public void run()
+                {
+                    SelectionKey key = stream.key;
+
+                    if (key != null && key.isValid())
+                    {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+            });
+        }
+
+        void cancel(final Stream stream)
+        {
+            change(new Runnable()
+            {
+                public void run()
+                {
+                    stream.closeChannel();
+                }
+            });
+        }
+
+        void shutdown()
+        {
+            running = false;
+            selector.wakeup();
+        }
+
+        private void change(Runnable change)
+        {
+            changes.add(change);
+            selector.wakeup();
+        }
+
+        public void run()
+        {
+            try
+            {
+                while (running)
+                {
+                    selector.select(1000);
+
+                    Runnable change;
+
+                    while ((change = changes.poll()) != null)
+                    {
+                        change.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                    while (keys.hasNext())
+                    {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        Stream stream = (Stream) key.attachment();
+
+                        try
+                        {
+                            handle(key, stream);
+                        }
+                        catch (IOException e)
+                        {
+                            stream.fail(e);
+                        }
+                    }
+
+                    checkConnectTimeouts();
+                }
+            }
+            catch (IOException e)
+            {
+                Log.e(TAG, "The selector failed.", e);
+            }
+            finally
+            {
+                Runnable change;
+
+                while ((change = changes.poll()) != null)
+                {
+                    change.run();
+                }
+
+                for (SelectionKey key : selector.keys())
+                {
+                    ((Stream) key.attachment()).fail(new IOException("The decoder was closed."));
+                }
+
+                try
+                {
+                    selector.close();
+                }
+                catch (IOException e)
+                {
+                    Log.e(TAG, "Could not close the selector.", e);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key, Stream stream) throws IOException
+        {
+            if (!key.isValid())
+            {
+                return;
+            }
+
+            if (key.isConnectable())
+            {
+                stream.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+            else if (key.isWritable())
+            {
+                stream.channel.write(stream.request);
+
+                if (!stream.request.hasRemaining())
+                {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            else if (key.isReadable())
+            {
+                readBuffer.clear();
+
+                int count = stream.channel.read(readBuffer);
+
+                if (count < 0)
+                {
+                    stream.closeChannel();
+                    stream.end(null);
+                    return;
+                }
+
+                stream.received(readBuffer.array(), count);
+
+                // Leave the rest in the socket until the decoder catches up.
+                // Paused is set first, so a decoder that drains the queue
+                // from here on resumes the stream; one that drained it
+                // before is caught by the check after.
+                if (stream.pendingBytes.get() > MAX_PENDING_BYTES)
+                {
+                    stream.paused.set(true);
+                    key.interestOps(0);
+
+                    if (stream.pendingBytes.get() < MAX_PENDING_BYTES / 2 && stream.paused.compareAndSet(true, false))
+                    {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+            }
+        }
+
+        private void checkConnectTimeouts()
+        {
+            long now = System.currentTimeMillis();
+
+            if (now - lastTimeoutCheck < 1000)
+            {
+                return;
+            }
+
+            lastTimeoutCheck = now;
+
+            for (SelectionKey key : selector.keys())
+            {
+                Stream stream = (Stream) key.attachment();
+
+                if (key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) != 0
+                        && now - stream.openedAt > CONNECT_TIMEOUT_MILLIS)
+                {
+                    stream.fail(new IOException("Timed out connecting to " + stream.url));
+                }
+            }
+        }
+    }
+
+    /**
+     * One stream: its socket, the bytes received and not decoded yet, and its
+     * decoder.
+     */
+    public class Stream
+    {
+        private final URL url;
+        private final Callback callback;
+        private final SocketChannel channel;
+        private final Reactor reactor;
+        private final ByteBuffer request;
+        private final long openedAt = System.currentTimeMillis();
+
+        SelectionKey key;
+
+        // Received audio, handed from the I/O thread to the decode task.
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicInteger pendingBytes = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private final AtomicBoolean paused = new AtomicBoolean();
+        private volatile IOException failure;
+
+        // The response header and metadata, parsed on the I/O thread.
+        private final StringBuilder header = new StringBuilder();
+        private boolean headerDone = false;
+        private int metaInterval = 0;
+        private int untilMetadata = 0;
+        private int metadataLeft = -1;
+        private byte[] metadataBytes;
+        private volatile String metadata;
+
+        private final Runnable decodeTask = new Runnable()
+        {
+            public void run()
+            {
+                decode();
+            }
+        };
+
+        private volatile long bytesReceived = 0;
+        private volatile long samplesDecoded = 0;
+
+        // The decoder, only used by the decode task.
+        private final SyncState syncState = new SyncState();
+        private final StreamState streamState = new StreamState();
+        private final Page page = new Page();
+        private final Packet packet = new Packet();
+        private Info info;
+        private Comment comment;
+        private DspState dspState;
+        private Block block;
+        private int headerPackets = 0;
+        private final float[][][] pcm = new float[1][][];
+        private int[] index;
+
+        Stream(URL url, Callback callback, SocketChannel channel, Reactor reactor)
+        {
+            this.url = url;
+            this.callback = callback;
+            this.channel = channel;
+            this.reactor = reactor;
+
+            String path = url.getFile().length() == 0 ? "/" : url.getFile();
+            String text = "GET " + path + " HTTP/1.0\r\n"
+                    + "Host: " + url.getHost() + (url.getPort() != -1 ? ":" + url.getPort() : "") + "\r\n"
+                    + "User-Agent: AndroidOggStreamPlayer\r\n"
+                    + "Icy-MetaData: 1\r\n"
+                    + "\r\n";
+
+            ByteBuffer bytes;
+
+            try
+            {
+                bytes = ByteBuffer.wrap(text.getBytes("ISO-8859-1"));
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                bytes = ByteBuffer.wrap(text.getBytes());
+            }
+
+            this.request = bytes;
+
+            syncState.init();
+        }
+
+        public URL getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * @return the headers of the current link, or null before they are
+         *         read
+         */
+        public Info getInfo()
+        {
+            return info;
+        }
+
+        /**
+         * @return the metadata the server sent last, or null
+         */
+        public String getMetadata()
+        {
+            return metadata;
+        }
+
+        public long getBytesReceived()
+        {
+            return bytesReceived;
+        }
+
+        public long getSamplesDecoded()
+        {
+            return samplesDecoded;
+        }
+
+        /**
+         * Returns the bytes received that the decoder has not taken yet.
+         *
+         * @return the number of bytes
+         */
+        public int getPendingBytes()
+        {
+            return pendingBytes.get();
+        }
+
+        public boolean isEnded()
+        {
+            return ended.get();
+        }
+
+        /**
+         * Stops reading the stream. The callback learns of it through
+         * <code>streamEnded()</code>.
+         */
+        public void close()
+        {
+            end(null);
+            reactor.cancel(this);
+        }
+
+        /*
+         * On the I/O thread: takes the response header and the metadata out
+         * of the bytes and queues the audio for the decoder.
+         */
+        void received(byte[] data, int count) throws IOException
+        {
+            bytesReceived += count;
+
+            int offset = 0;
+
+            if (!headerDone)
+            {
+                offset = readHeader(data, count);
+
+                if (!headerDone)
+                {
+                    return;
+                }
+            }
+
+            while (offset < count)
+            {
+                if (metadataLeft >= 0)
+                {
+                    offset = readMetadata(data, offset, count);
+                    continue;
+                }
+
+                int length = count - offset;
+
+                if (metaInterval > 0)
+                {
+                    if (untilMetadata == 0)
+                    {
+                        // The length byte, in sixteens.
+                        metadataLeft = (data[offset++] & 0xff) * 16;
+                        metadataBytes = new byte[metadataLeft];
+                        untilMetadata = metaInterval;
+                        continue;
+                    }
+
+                    length = Math.min(length, untilMetadata);
+                    untilMetadata -= length;
+                }
+
+                byte[] audio = new byte[length];
+                System.arraycopy(data, offset, audio, 0, length);
+                offset += length;
+
+                queue(audio);
+            }
+        }
+
+        private int readHeader(byte[] data, int count) throws IOException
+        {
+            int offset = 0;
+
+            while (offset < count)
+            {
+                header.append((char) (data[offset++] & 0xff));
+
+                int length = header.length();
+
+                if (length >= 4 && header.charAt(length - 1) == '\n' && header.charAt(length - 2) == '\r'
+                        && header.charAt(length - 3) == '\n' && header.charAt(length - 4) == '\r')
+                {
+                    parseHeader();
+                    headerDone = true;
+                    break;
+                }
+
+                if (length > MAX_HEADER_BYTES)
+                {
+                    throw new IOException("The response header from " + url + " is too long.");
+                }
+            }
+
+            return offset;
+        }
+
+        private void parseHeader() throws IOException
+        {
+            String[] lines = header.toString().split("\r\n");
+            String[] status = lines[0].split(" ", 3);
+
+            if (status.length < 2 || !status[1].equals("200"))
+            {
+                throw new IOException(url + " answered with " + lines[0]);
+            }
+
+            for (int i = 1; i < lines.length; i++)
+            {
+                int colon = lines[i].indexOf(':');
+
+                if (colon <= 0)
+                {
+                    continue;
+                }
+
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.US);
+                String value = lines[i].substring(colon + 1).trim();
+
+                if (name.equals("icy-metaint"))
+                {
+                    metaInterval = (int) StreamCache.lengthOf(value);
+                    untilMetadata = metaInterval;
+                }
+                else if (name.equals("transfer-encoding") && !value.equalsIgnoreCase("identity"))
+                {
+                    throw new IOException(url + " sent a " + value + " body, which we can't multiplex.");
+                }
+            }
+
+            header.setLength(0);
+        }
+
+        private int readMetadata(byte[] data, int offset, int count)
+        {
+            int length = Math.min(metadataLeft, count - offset);
+
+            System.arraycopy(data, offset, metadataBytes, metadataBytes.length - metadataLeft, length);
+            metadataLeft -= length;
+
+            if (metadataLeft == 0)
+            {
+                int end = metadataBytes.length;
+
+                while (end > 0 && metadataBytes[end - 1] == 0)
+                {
+                    end--;
+                }
+
+                if (end > 0)
+                {
+                    try
+                    {
+                        metadata = new String(metadataBytes, 0, end, "UTF-8");
+                    }
+                    catch (UnsupportedEncodingException e)
+                    {
+                        metadata = new String(metadataBytes, 0, end);
+                    }
+                }
+
+                metadataLeft = -1;
+                metadataBytes = null;
+            }
+
+            return offset + length;
+        }
+
+        private void queue(byte[] audio)
+        {
+            pending.add(audio);
+            pendingBytes.addAndGet(audio.length);
+            schedule();
+        }
+
+        private void schedule()
+        {
+            if (scheduled.compareAndSet(false, true))
+            {
+                try
+                {
+                    decoders.execute(decodeTask);
+                }
+                catch (RuntimeException e)
+                {
+                    // The pool was shut down.
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        void fail(IOException cause)
+        {
+            closeChannel();
+
+            if (!ended.get())
+            {
+                Log.e(TAG, "Stream " + url + " failed.", cause);
+                end(cause);
+            }
+        }
+
+        void end(IOException cause)
+        {
+            if (ended.compareAndSet(false, true))
+            {
+                failure = cause;
+                pending.add(END);
+                schedule();
+            }
+        }
+
+        void closeChannel()
+        {
+            if (key != null)
+            {
+                key.cancel();
+            }
+
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                Log.e(TAG, "Could not close the channel to " + url, e);
+            }
+        }
+
+        /*
+         * The decode task: feeds what was received to the decoder. Runs on
+         * the decode pool, at most once at a time per stream.
+         */
+        private void decode()
+        {
+            while (true)
+            {
+                byte[] data;
+
+                while ((data = pending.poll()) != null)
+                {
+                    if (data == END)
+                    {
+                        finish();
+                        return;
+                    }
+
+                    pendingBytes.addAndGet(-data.length);
+
+                    // After a failure the rest is only drained.
+                    if (failure != null)
+                    {
+                        continue;
+                    }
+
+                    int offset = syncState.buffer(data.length);
+                    System.arraycopy(data, 0, syncState.data, offset, data.length);
+                    syncState.wrote(data.length);
+
+                    try
+                    {
+                        decodePages();
+                    }
+                    catch (IOException e)
+                    {
+                        fail(e);
+                    }
+
+                    if (pendingBytes.get() < MAX_PENDING_BYTES / 2 && paused.compareAndSet(true, false))
+                    {
+                        reactor.resume(this);
+                    }
+                }
+
+                scheduled.set(false);
+
+                // Bytes may have come in after the last poll.
+                if (pending.isEmpty() || !scheduled.compareAndSet(false, true))
+                {
+                    return;
+                }
+            }
+        }
+
+        private void decodePages() throws IOException
+        {
+            while (syncState.pageout(page) == 1)
+            {
+                // A new link of a chained stream starts with its headers.
+                if (page.bos() != 0)
+                {
+                    streamState.init(page.serialno());
+                    streamState.reset();
+
+                    info = new Info();
+                    comment = new Comment();
+                    info.init();
+                    comment.init();
+                    headerPackets = 0;
+                }
+
+                if (info == null)
+                {
+                    // Joined in the middle of a link; wait for the next one.
+                    continue;
+                }
+
+                streamState.pagein(page);
+
+                while (streamState.packetout(packet) == 1)
+                {
+                    if (headerPackets < 3)
+                    {
+                        if (info.synthesis_headerin(comment, packet) < 0)
+                        {
+                            throw new IOException(url + " is not a Vorbis stream.");
+                        }
+
+                        if (++headerPackets == 3)
+                        {
+                            dspState = new DspState();
+                            dspState.synthesis_init(info);
+                            block = new Block(dspState);
+                            index = new int[info.channels];
+
+                            callback.headerRead(this, info, comment);
+                        }
+                        continue;
+                    }
+
+                    if (block.synthesis(packet) == 0)
+                    {
+                        dspState.synthesis_blockin(block);
+                    }
+
+                    int samples;
+
+                    while ((samples = dspState.synthesis_pcmout(pcm, index)) > 0)
+                    {
+                        callback.samplesDecoded(this, pcm[0], index, samples);
+
+                        samplesDecoded += samples;
+                        dspState.synthesis_read(samples);
+                    }
+                }
+            }
+        }
+
+        private void finish()
+        {
+            pending.clear();
+            pendingBytes.set(0);
+            syncState.clear();
+
+            openStreams.decrementAndGet();
+            callback.streamEnded(this, failure);
+        }
+    }
+}
@@ -33,8 +33,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.net.UnknownServiceException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -46,15 +53,26 @@ public class OggStreamPlayer
 
     public static final String TAG = OggStreamPlayer.class.getSimpleName();
 
+    /**
+     * Where the player is in its life. A player is idle until it plays for
+     * the first time, and stopped once a playback is over, whether it was
+     * stopped or came to the end of the stream.
+     */
+    public enum State
+    {
+        IDLE, PREPARING, BUFFERING, PLAYING, PAUSED, STOPPED
+    }
+
     // If you wish to debug this source, please set the variable below to true.
     private final boolean debugMode = true;
 
     /*
-     * URLConnection and InputStream objects so that we can open a connection to
-     * the media file.
+     * The source that opens connections to the media file, with the
+     * timeouts and buffers set on it, and the InputStream we read from.
      */
-    private URLConnection urlConnection = null;
-    private InputStream inputStream = null;
+    private StreamSource streamSource = StreamSource.getDefault();
+    private volatile StreamSource.Response response = null;
+    private volatile InputStream inputStream = null;
 
     /*
      * We need a buffer, it's size, a count to know how many bytes we have read
@@ -91,8 +109,100 @@ public class OggStreamPlayer
     private Block jorbisBlock;
     private Comment jorbisComment;
     private Info jorbisInfo;
-    private AudioTrack track;
-    private boolean isStopped = false;
+    private volatile AudioTrack track;
+
+    /*
+     * Other threads stop, pause and resume the player by changing its state,
+     * so every change is made with compareAndSet() from the states it may be
+     * made from. A play() waits for the playback before it to clean up.
+     */
+    private final AtomicReference<State> state = new AtomicReference<State>(State.IDLE);
+    private final Lock playLock = new ReentrantLock();
+
+    // Counts the calls to stop(), so a play() can tell that one came while
+    // it waited for the previous playback, when there was nothing to stop.
+    private final AtomicInteger stopRequests = new AtomicInteger();
+
+    /*
+     * In low latency mode every complete page is decoded as soon as its
+     * bytes arrive and the AudioTrack gets the smallest buffer it accepts.
+     * The latency from the arrival of a page to its frames being written is
+     * measured in either mode: every read is noted with its time, a page
+     * gets the time of the read that completed it, and with a PCM ring its
+     * frames carry that time to the output thread.
+     */
+    private boolean lowLatency = false;
+    private final ReceiveTimes readTimes = new ReceiveTimes();
+    private final ReceiveTimes ringTimes = new ReceiveTimes();
+    private long pageReceiveTime;
+    private volatile long latencyNanos = -1;
+
+    /*
+     * With a buffer duration set, decoded frames go into a PCM ring and a
+     * separate output thread moves them to the AudioTrack. That is what lets
+     * us pause, resume and replay without decoding again.
+     */
+    private float aheadSeconds = 0;
+    private float historySeconds = 0;
+    private volatile PcmRingBuffer pcmRing;
+    private Thread outputThread;
+    private volatile int replayFrames = 0;
+    private final Lock pauseLock = new ReentrantLock();
+    private final Condition pauseChanged = pauseLock.newCondition();
+
+    /*
+     * Playback position bookkeeping. The decoder numbers its frames from the
+     * first granule position it sees; the output side remembers the position
+     * after the last frame given to the AudioTrack and how many frames the
+     * track was given since it was last flushed.
+     */
+    private boolean positionKnown;
+    private long decodedPosition;
+    private volatile long outputPosition;
+    private volatile long framesSinceFlush;
+    private volatile int headAtFlush;
+
+    /*
+     * When the connection breaks off before the end of the stream we connect
+     * again, waiting twice as long after every failed attempt. A file with a
+     * known length is resumed where it broke off; a live stream is picked up
+     * at its next page, reusing the decoder if its headers did not change.
+     */
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 8000;
+
+    private int maxReconnectAttempts = 5;
+    private long reconnectDelayMillis = 500;
+    private URL streamUrl;
+    private long streamPosition;
+    private boolean liveStream;
+    private final byte[][] headerPackets = new byte[3][];
+
+    private volatile int reconnectCount = 0;
+    private volatile int failedReconnectCount = 0;
+    private volatile long lastReconnectMillis = -1;
+
+    /*
+     * Where playAsync() and the output thread run. The threads are platform
+     * threads unless a factory or executor says otherwise. Waiting is done
+     * with locks rather than monitors, so a virtual thread blocked in the
+     * player never pins the platform thread it runs on.
+     */
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY = PlayerThreads.platform(TAG);
+
+    private ThreadFactory threadFactory = DEFAULT_THREAD_FACTORY;
+    private Executor executor;
+
+    /*
+     * The decoder and the output thread run at audio priority, so they keep
+     * the AudioTrack fed while the UI is busy. Underruns that happen anyway
+     * make the AudioTrack buffer larger, for this track where the platform
+     * allows it and for the next one otherwise.
+     */
+    private PlaybackThreadPolicy threadPolicy = PlaybackThreadPolicy.audio();
+    private final UnderrunDetector underrunDetector = new UnderrunDetector();
+
+    // Where played media is kept for the next time, if anywhere.
+    private StreamCache streamCache;
 
     private OggStreamPlayerCallback playerCallback;
 
@@ -118,9 +228,55 @@ public class OggStreamPlayer
         play(getUrl(url));
     }
 
+    /**
+     * Plays the stream at the given URL on the calling thread, and returns
+     * when it is over. A playback of this player still running on another
+     * thread is stopped first. A <code>stop()</code> called after this
+     * method was, even before the playback started, ends it.
+     *
+     * @param url the URL of the stream
+     */
     public void play(URL url)
     {
-        isStopped = false;
+        play(url, stopRequests.get());
+    }
+
+    /*
+     * Plays unless stop() has been called since stopRequests was at stops.
+     */
+    private void play(URL url, int stops)
+    {
+        stopPlayback();
+
+        playLock.lock();
+        try
+        {
+            state.set(State.PREPARING);
+
+            // A stop() from here on finds the player preparing; one that came
+            // before the line above is only seen in the count.
+            if (stopRequests.get() != stops)
+            {
+                return;
+            }
+
+            playLocked(url);
+        }
+        finally
+        {
+            state.set(State.STOPPED);
+            playLock.unlock();
+        }
+    }
+
+    private void playLocked(URL url)
+    {
+        replayFrames = 0;
+        positionKnown = false;
+        decodedPosition = 0;
+        outputPosition = 0;
+        framesSinceFlush = 0;
+        headAtFlush = 0;
 
         if (playerCallback != null)
         {
@@ -140,9 +296,36 @@ public class OggStreamPlayer
         joggPacket = new Packet();
         joggPage = new Page();
 
+        streamUrl = url;
+        streamPosition = 0;
+        readTimes.clear();
+        ringTimes.clear();
+
         configureInputStream(url);
 
-        playImpl();
+        // stop() may have come while we were connecting.
+        if (!state.compareAndSet(State.PREPARING, State.BUFFERING) && isStopped())
+        {
+            closeInputStream();
+
+            if (playerCallback != null)
+            {
+                playerCallback.playerStopped();
+            }
+            return;
+        }
+
+        PlaybackThreadPolicy policy = threadPolicy;
+        int previous = policy.apply();
+
+        try
+        {
+            playImpl();
+        }
+        finally
+        {
+            policy.restore(previous);
+        }
     }
 
     public void playAsync(String url)
@@ -152,13 +335,16 @@ public class OggStreamPlayer
 
     public void playAsync(final URL url)
     {
-        new Thread(new Runnable()
+        Executor target = executor != null ? executor : PlayerThreads.threadPerTask(threadFactory);
+        final int stops = stopRequests.get();
+
+        target.execute(new Runnable()
         {
             public void run()
             {
                 try
                 {
-                    play(url);
+                    play(url, stops);
                 }
                 catch (Exception e)
                 {
@@ -170,163 +356,628 @@ public class OggStreamPlayer
                     }
                 }
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Sets where <code>playAsync()</code> and the output thread get their
+     * threads. See <code>PlayerThreads</code> for platform and virtual
+     * thread factories.
+     *
+     * @param threadFactory the factory, or null for named platform threads
+     */
+    public void setThreadFactory(ThreadFactory threadFactory)
+    {
+        this.threadFactory = threadFactory != null ? threadFactory : DEFAULT_THREAD_FACTORY;
+    }
+
+    /**
+     * Makes <code>playAsync()</code> run on the given executor instead of a
+     * new thread from the thread factory. The executor must not make the
+     * player wait for other work, since a player runs until its stream ends.
+     *
+     * @param executor the executor, or null for a thread per call
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets how the threads that decode and play are scheduled, from the next
+     * call to <code>play()</code>. The default is
+     * <code>PlaybackThreadPolicy.audio()</code>.
+     *
+     * @param threadPolicy the policy, or null to leave the threads alone
+     */
+    public void setThreadPolicy(PlaybackThreadPolicy threadPolicy)
+    {
+        this.threadPolicy = threadPolicy != null ? threadPolicy : PlaybackThreadPolicy.none();
+    }
+
+    public PlaybackThreadPolicy getThreadPolicy()
+    {
+        return threadPolicy;
+    }
+
+    /**
+     * Returns how often the AudioTrack ran out of audio to play, over every
+     * call to <code>play()</code> on this player.
+     *
+     * @return the number of underruns
+     */
+    public int getUnderrunCount()
+    {
+        return underrunDetector.getUnderrunCount();
+    }
+
+    /**
+     * Returns the size of the AudioTrack buffer, which grows after underruns.
+     *
+     * @return the size in frames, 0 before the first track
+     */
+    public int getTrackBufferFrames()
+    {
+        return underrunDetector.getBufferFrames();
     }
 
+    /**
+     * Stops the playback at once. The AudioTrack drops what it holds, and a
+     * read blocked on the network ends since its stream is closed.
+     */
     public void stop()
     {
-        isStopped = true;
+        stopRequests.incrementAndGet();
+        stopPlayback();
     }
 
-    private URL getUrl(String pUrl)
+    /*
+     * Ends the playback running now, if any, without counting as a stop
+     * request.
+     */
+    private void stopPlayback()
     {
-        URL url = null;
+        if (!transition(State.STOPPED, State.PREPARING, State.BUFFERING, State.PLAYING, State.PAUSED))
+        {
+            return;
+        }
 
-        try
+        AudioTrack audioTrack = track;
+        if (audioTrack != null)
         {
-            url = new URL(pUrl);
+            try
+            {
+                audioTrack.pause();
+                audioTrack.flush();
+            }
+            catch (IllegalStateException e)
+            {
+                // Not initialized or already released; it plays nothing.
+            }
         }
-        catch (MalformedURLException exception)
+
+        PcmRingBuffer ring = pcmRing;
+        if (ring != null)
         {
-            Log.e(TAG, "Malformed \"url\" parameter: \"" + pUrl + "\"");
+            ring.close();
         }
 
-        return url;
+        InputStream in = inputStream;
+        if (in != null)
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+
+        signalPauseChanged();
     }
 
     /**
-     * Sets the <code>inputStream</code> object by taking an URL, opens a
-     * connection to it and get the <code>InputStream</code>.
+     * Returns the state of the player.
      *
-     * @param pUrl the url to the media file
+     * @return the state
      */
-    private void configureInputStream(URL pUrl)
+    public State getState()
     {
-        // Try to open a connection to the URL.
+        return state.get();
+    }
+
+    /**
+     * Makes the next call to <code>play()</code> queue decoded audio in a PCM
+     * ring between the decoder and the AudioTrack. This is needed for
+     * <code>pause()</code>, <code>resume()</code> and <code>replay()</code>.
+     * Zero seconds ahead, the default, writes straight to the AudioTrack.
+     *
+     * @param aheadSeconds   how much audio may be decoded ahead of playback
+     * @param historySeconds how much played audio is kept for a replay
+     */
+    public void setBufferDuration(float aheadSeconds, float historySeconds)
+    {
+        this.aheadSeconds = aheadSeconds;
+        this.historySeconds = historySeconds;
+    }
+
+    /**
+     * Pauses the output at once. The connection stays open and the decoder
+     * keeps its state: with a buffer duration set it goes on until the PCM
+     * ring is full, without one it waits before its next write. A server may
+     * still drop a connection paused for long, which is then made again.
+     */
+    public void pause()
+    {
+        pauseLock.lock();
         try
         {
-            urlConnection = pUrl.openConnection();
-        }
-        catch (UnknownServiceException exception)
-        {
-            Log.e(TAG, "The protocol does not support input.");
+            if (!transition(State.PAUSED, State.PREPARING, State.BUFFERING, State.PLAYING))
+            {
+                return;
+            }
+
+            AudioTrack audioTrack = track;
+            if (audioTrack != null)
+            {
+                audioTrack.pause();
+            }
         }
-        catch (IOException exception)
+        finally
         {
-            Log.e(TAG, "An I/O error occoured while trying create the "
-                    + "URL connection.");
+            pauseLock.unlock();
         }
+    }
 
-        // If we have a connection, try to create an input stream.
-        if (urlConnection != null)
+    /**
+     * Resumes the output after <code>pause()</code>, from what the AudioTrack
+     * and the decoder still hold.
+     */
+    public void resume()
+    {
+        pauseLock.lock();
+        try
         {
-            try
+            // Playing again from the next write.
+            if (!state.compareAndSet(State.PAUSED, State.BUFFERING))
             {
-                inputStream = urlConnection.getInputStream();
+                return;
             }
-            catch (IOException exception)
+
+            AudioTrack audioTrack = track;
+            if (audioTrack != null)
             {
-                Log.e(TAG, "An I/O error occoured while trying to get an "
-                        + "input stream from the URL.");
-                //Log.e(TAG, exception);
+                audioTrack.play();
             }
+
+            pauseChanged.signalAll();
+        }
+        finally
+        {
+            pauseLock.unlock();
         }
     }
 
+    public boolean isPaused()
+    {
+        return state.get() == State.PAUSED;
+    }
+
     /**
-     * This method is probably easiest understood by looking at the body.
-     * However, it will - if no problems occur - call methods to initialize the
-     * JOgg JOrbis libraries, read the header, initialize the sound system, read
-     * the body of the stream and clean up.
+     * Plays the last seconds again from the PCM ring, as far as they are still
+     * kept there. Only works with a buffer duration set.
+     *
+     * @param seconds how far to go back from what is being heard now
      */
-    private void playImpl()
+    public void replay(float seconds)
     {
-        // Check that we got an InputStream.
-        if (inputStream == null)
+        Info info = jorbisInfo;
+        if (pcmRing == null || info == null)
         {
-            Log.e(TAG, "We don't have an input stream and therefor cannot continue.");
             return;
         }
 
-        // Initialize JOrbis.
-        initializeJOrbis();
+        replayFrames = (int) (seconds * info.rate);
 
-		/*
-         * If we can read the header, we try to inialize the sound system. If we
-		 * could initialize the sound system, we try to read the body.
-		 */
-        if (readHeader())
+        signalPauseChanged();
+    }
+
+    /*
+     * Moves to the given state if the player is in one of the states it may
+     * be reached from, and tells whether it did.
+     */
+    private boolean transition(State to, State... from)
+    {
+        for (State current = state.get(); Arrays.asList(from).contains(current); current = state.get())
         {
-            if (initializeSound())
+            if (state.compareAndSet(current, to))
             {
-                readBody();
+                return true;
             }
         }
 
-        // Afterwards, we clean up.
-        cleanUp();
+        return false;
+    }
 
-        if (playerCallback != null)
+    private boolean isStopped()
+    {
+        return state.get() == State.STOPPED;
+    }
+
+    /*
+     * Holds the thread that writes to the AudioTrack while the player is
+     * paused and no replay is asked for.
+     */
+    private void awaitResume() throws InterruptedException
+    {
+        pauseLock.lock();
+        try
         {
-            playerCallback.playerStopped();
+            while (state.get() == State.PAUSED && replayFrames == 0)
+            {
+                pauseChanged.await();
+            }
+        }
+        finally
+        {
+            pauseLock.unlock();
         }
+    }
 
+    private void signalPauseChanged()
+    {
+        pauseLock.lock();
+        try
+        {
+            pauseChanged.signalAll();
+        }
+        finally
+        {
+            pauseLock.unlock();
+        }
     }
 
     /**
-     * Initializes JOrbis. First, we initialize the <code>SyncState</code>
-     * object. After that, we prepare the <code>SyncState</code> buffer. Then
-     * we "initialize" our buffer, taking the data in <code>SyncState</code>.
+     * Returns the granule position of the frame being heard right now, which
+     * is the number of frames since the start of the stream.
+     *
+     * @return the position in frames
      */
-    private void initializeJOrbis()
+    public long getPosition()
     {
-        debugOutput("Initializing JOrbis.");
-
-        // Initialize SyncState
-        joggSyncState.init();
+        AudioTrack audioTrack = track;
+        long position = outputPosition;
 
-        // Prepare the to SyncState internal buffer
-        joggSyncState.buffer(bufferSize);
+        if (audioTrack == null)
+        {
+            return position;
+        }
 
-		/*
-         * Fill the buffer with the data from SyncState's internal buffer. Note
-		 * how the size of this new buffer is different from bufferSize.
-		 */
-        buffer = joggSyncState.data;
+        // Frames given to the AudioTrack that it has not played yet.
+        long queued = framesSinceFlush - (audioTrack.getPlaybackHeadPosition() - headAtFlush);
 
-        debugOutput("Done initializing JOrbis.");
+        return position - Math.max(0, queued);
     }
 
     /**
-     * This method reads the header of the stream, which consists of three
-     * packets.
+     * Returns the position of the frame being heard in milliseconds.
      *
-     * @return true if the header was successfully read, false otherwise
+     * @return the position, or 0 before the stream header is known
      */
-    private boolean readHeader()
+    public long getPositionMillis()
     {
-        debugOutput("Starting to read the header.");
+        Info info = jorbisInfo;
+        if (info == null || info.rate <= 0)
+        {
+            return 0;
+        }
 
-		/*
-		 * Variable used in loops below. While we need more data, we will
-		 * continue to read from the InputStream.
-		 */
-        boolean needMoreData = true;
+        return getPosition() * 1000 / info.rate;
+    }
 
-		/*
-		 * We will read the first three packets of the header. We start off by
-		 * defining packet = 1 and increment that value whenever we have
-		 * successfully read another packet.
-		 */
-        int packet = 1;
+    /**
+     * Returns the memory held by the PCM ring of this player.
+     *
+     * @return the number of bytes, 0 without a buffer duration
+     */
+    public int getBufferMemoryBytes()
+    {
+        PcmRingBuffer ring = pcmRing;
 
-		/*
-		 * While we need more data (which we do until we have read the three
+        return ring == null ? 0 : ring.getAllocatedBytes();
+    }
+
+    /**
+     * Selects the low latency mode for the next call to <code>play()</code>.
+     * Every page is decoded as soon as it is complete, instead of one page
+     * per read, and the AudioTrack buffer starts at its minimum size. It
+     * only grows after underruns.
+     *
+     * @param lowLatency true to trade buffering for latency
+     */
+    public void setLowLatency(boolean lowLatency)
+    {
+        this.lowLatency = lowLatency;
+    }
+
+    public boolean isLowLatency()
+    {
+        return lowLatency;
+    }
+
+    /**
+     * Returns the most recently measured latency between receiving the last
+     * byte of a page and writing the frames decoded from it to the
+     * AudioTrack, or -1 if nothing has been written yet.
+     *
+     * @return the latency in milliseconds
+     */
+    public long getLatencyMillis()
+    {
+        long latency = latencyNanos;
+
+        return latency < 0 ? -1 : latency / 1000000;
+    }
+
+    /**
+     * Makes <code>play()</code> read through a cache on disk, so media played
+     * again is read from disk as far as it is still there. Live streams are
+     * not cached.
+     *
+     * @param streamCache the cache, or null to read from the network only
+     */
+    public void setStreamCache(StreamCache streamCache)
+    {
+        this.streamCache = streamCache;
+    }
+
+    public StreamCache getStreamCache()
+    {
+        return streamCache;
+    }
+
+    /**
+     * Sets the source that opens connections for the next call to
+     * <code>play()</code>. Players share <code>StreamSource.getDefault()</code>
+     * unless given another.
+     *
+     * @param streamSource the source with the timeouts and buffers to use
+     */
+    public void setStreamSource(StreamSource streamSource)
+    {
+        this.streamSource = streamSource;
+    }
+
+    public StreamSource getStreamSource()
+    {
+        return streamSource;
+    }
+
+    /**
+     * Returns the metadata the server last sent within the stream, such as
+     * <code>StreamTitle='...';</code>. It never reaches the decoder.
+     *
+     * @return the metadata, or null
+     */
+    public String getMetadata()
+    {
+        StreamSource.Response current = response;
+
+        return current == null ? null : current.getMetadata();
+    }
+
+    /**
+     * Sets how the player connects again when the connection breaks off. The
+     * first attempt is made after the given delay, and every next attempt
+     * waits twice as long as the one before, up to eight seconds. What is
+     * buffered keeps playing meanwhile; see <code>setBufferDuration()</code>.
+     *
+     * @param maxAttempts the attempts before giving up, 0 to never reconnect
+     * @param delayMillis the wait before the first attempt
+     */
+    public void setReconnect(int maxAttempts, long delayMillis)
+    {
+        this.maxReconnectAttempts = maxAttempts;
+        this.reconnectDelayMillis = delayMillis;
+    }
+
+    /**
+     * Returns how often the player connected again after the connection
+     * broke off.
+     *
+     * @return the number of reconnects
+     */
+    public int getReconnectCount()
+    {
+        return reconnectCount;
+    }
+
+    /**
+     * Returns how many attempts to connect again failed.
+     *
+     * @return the number of failed attempts
+     */
+    public int getFailedReconnectCount()
+    {
+        return failedReconnectCount;
+    }
+
+    /**
+     * Returns how long the stream was interrupted the last time it broke off,
+     * from the failed read until it was connected again.
+     *
+     * @return the time in milliseconds, or -1 if it never broke off
+     */
+    public long getLastReconnectMillis()
+    {
+        return lastReconnectMillis;
+    }
+
+    private URL getUrl(String pUrl)
+    {
+        URL url = null;
+
+        try
+        {
+            url = new URL(pUrl);
+        }
+        catch (MalformedURLException exception)
+        {
+            Log.e(TAG, "Malformed \"url\" parameter: \"" + pUrl + "\"");
+        }
+
+        return url;
+    }
+
+    /**
+     * Sets the <code>inputStream</code> object by taking an URL, opens a
+     * connection to it and get the <code>InputStream</code>.
+     *
+     * @param pUrl the url to the media file
+     */
+    private void configureInputStream(URL pUrl)
+    {
+        // With a cache, it opens the connection if it has to.
+        if (streamCache != null)
+        {
+            try
+            {
+                inputStream = streamCache.open(pUrl);
+                liveStream = streamCache.getLength(pUrl) < 0;
+            }
+            catch (IOException exception)
+            {
+                Log.e(TAG, "An I/O error occoured while trying to open "
+                        + "the URL through the cache.");
+            }
+            return;
+        }
+
+        // Try to open a connection to the URL.
+        try
+        {
+            response = streamSource.open(pUrl, 0);
+            inputStream = response;
+            liveStream = response.getLength() < 0;
+        }
+        catch (IOException exception)
+        {
+            Log.e(TAG, "An I/O error occoured while trying to open "
+                    + "the URL.", exception);
+        }
+    }
+
+    /**
+     * This method is probably easiest understood by looking at the body.
+     * However, it will - if no problems occur - call methods to initialize the
+     * JOgg JOrbis libraries, read the header, initialize the sound system, read
+     * the body of the stream and clean up.
+     */
+    private void playImpl()
+    {
+        // Check that we got an InputStream.
+        if (inputStream == null)
+        {
+            Log.e(TAG, "We don't have an input stream and therefor cannot continue.");
+            return;
+        }
+
+        // Initialize JOrbis.
+        initializeJOrbis();
+
+		/*
+         * If we can read the header, we try to inialize the sound system. If we
+		 * could initialize the sound system, we try to read the body.
+		 */
+        if (readHeader())
+        {
+            if (initializeSound())
+            {
+                readBody();
+
+                // Let the output thread play what is left in the ring.
+                if (pcmRing != null)
+                {
+                    pcmRing.close();
+
+                    try
+                    {
+                        outputThread.join();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        // Afterwards, we clean up.
+        cleanUp();
+        state.set(State.STOPPED);
+
+        if (playerCallback != null)
+        {
+            playerCallback.playerStopped();
+        }
+
+    }
+
+    /**
+     * Initializes JOrbis. First, we initialize the <code>SyncState</code>
+     * object. After that, we prepare the <code>SyncState</code> buffer. Then
+     * we "initialize" our buffer, taking the data in <code>SyncState</code>.
+     */
+    private void initializeJOrbis()
+    {
+        debugOutput("Initializing JOrbis.");
+
+        // Initialize SyncState
+        joggSyncState.init();
+
+        // Prepare the to SyncState internal buffer
+        joggSyncState.buffer(bufferSize);
+
+		/*
+         * Fill the buffer with the data from SyncState's internal buffer. Note
+		 * how the size of this new buffer is different from bufferSize.
+		 */
+        buffer = joggSyncState.data;
+
+        debugOutput("Done initializing JOrbis.");
+    }
+
+    /**
+     * This method reads the header of the stream, which consists of three
+     * packets.
+     *
+     * @return true if the header was successfully read, false otherwise
+     */
+    private boolean readHeader()
+    {
+        debugOutput("Starting to read the header.");
+
+		/*
+		 * Variable used in loops below. While we need more data, we will
+		 * continue to read from the InputStream.
+		 */
+        boolean needMoreData = true;
+
+		/*
+		 * We will read the first three packets of the header. We start off by
+		 * defining packet = 1 and increment that value whenever we have
+		 * successfully read another packet.
+		 */
+        int packet = 1;
+
+		/*
+		 * While we need more data (which we do until we have read the three
 		 * header packets), this loop reads from the stream and has a big
 		 * <code>switch</code> statement which does what it's supposed to do in
 		 * regards to the current packet.
 		 */
-        while (needMoreData)
+        while (needMoreData && !isStopped())
         {
             // Read from the InputStream.
             try
@@ -335,12 +986,23 @@ public class OggStreamPlayer
             }
             catch (IOException exception)
             {
-                Log.e(TAG, "Could not read from the input stream.");
+                // stop() closes the stream to end the read.
+                if (!isStopped())
+                {
+                    Log.e(TAG, "Could not read from the input stream.", exception);
+                }
+                return false;
+            }
 
+            // The end of the stream is handled like a read of nothing below.
+            if (count < 0)
+            {
+                count = 0;
             }
 
             // We let SyncState know how many bytes we read.
             joggSyncState.wrote(count);
+            received(count);
 
 			/*
 			 * We want to read the first three packets. For the first packet, we
@@ -416,6 +1078,9 @@ public class OggStreamPlayer
                                 return false;
                             }
 
+                            // Kept to recognize the stream after a reconnect.
+                            headerPackets[0] = copyPacket(joggPacket);
+
                             // We're done here, let's increment "packet".
                             packet++;
                             break;
@@ -487,6 +1152,7 @@ public class OggStreamPlayer
 									 * Info and Comment objects.
 									 */
                                     jorbisInfo.synthesis_headerin(jorbisComment, joggPacket);
+                                    headerPackets[packet - 1] = copyPacket(joggPacket);
 
                                     // Increment packet.
                                     packet++;
@@ -522,11 +1188,20 @@ public class OggStreamPlayer
 			 */
             if (count == 0 && needMoreData)
             {
-                Log.e(TAG, "Not enough header data was supplied.");
+                if (!isStopped())
+                {
+                    Log.e(TAG, "Not enough header data was supplied.");
+                }
                 return false;
             }
         }
 
+        if (needMoreData)
+        {
+            // Stopped before the header was complete.
+            return false;
+        }
+
         debugOutput("Finished reading the header.");
 
         return true;
@@ -559,28 +1234,27 @@ public class OggStreamPlayer
         int channels = jorbisInfo.channels;
         int rate = jorbisInfo.rate;
 
-        int minimumBufferSize;
+        int channelConfig = channels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minimumBufferSize = AudioTrack.getMinBufferSize(rate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
 
-        if (channels == 1)
-        {
-            minimumBufferSize = AudioTrack.getMinBufferSize(rate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT);
-            track = new AudioTrack(AudioManager.STREAM_MUSIC,
-                    rate,
-                    AudioFormat.CHANNEL_OUT_MONO,
-                    AudioFormat.ENCODING_PCM_16BIT,
-                    bufferSize < minimumBufferSize ? minimumBufferSize : bufferSize ,
-                    AudioTrack.MODE_STREAM);
-        }
-        else
-        {
-            minimumBufferSize = AudioTrack.getMinBufferSize(rate, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
-            track = new AudioTrack(AudioManager.STREAM_MUSIC,
-                    rate,
-                    AudioFormat.CHANNEL_OUT_STEREO,
-                    AudioFormat.ENCODING_PCM_16BIT,
-                    bufferSize < minimumBufferSize ? minimumBufferSize : bufferSize,
-                    AudioTrack.MODE_STREAM);
-        }
+        // In low latency mode we never ask for more than the minimum.
+        int trackBufferSize = bufferSize < minimumBufferSize || lowLatency ? minimumBufferSize : bufferSize;
+
+        // Keep the size the buffer grew to after underruns on earlier tracks.
+        int frameSize = 2 * channels;
+        int trackCapacity = underrunDetector.start((trackBufferSize + frameSize - 1) / frameSize) * frameSize;
+
+        track = new AudioTrack(AudioManager.STREAM_MUSIC,
+                rate,
+                channelConfig,
+                AudioFormat.ENCODING_PCM_16BIT,
+                trackCapacity,
+                AudioTrack.MODE_STREAM);
+
+        underrunDetector.attach(track);
+
+        debugOutput("AudioTrack buffer is " + underrunDetector.getBufferFrames() * frameSize + " bytes"
+                + (lowLatency ? " (low latency mode)." : "."));
 
 
         track.play();
@@ -592,6 +1266,27 @@ public class OggStreamPlayer
         pcmInfo = new float[1][][];
         pcmIndex = new int[jorbisInfo.channels];
 
+        // With a buffer duration, start the thread that feeds the AudioTrack.
+        if (aheadSeconds > 0)
+        {
+            int aheadFrames = Math.max((int) (aheadSeconds * rate), convertedBufferSize / (2 * channels));
+
+            pcmRing = new PcmRingBuffer(channels, aheadFrames, (int) (historySeconds * rate));
+
+            debugOutput("PCM ring holds " + pcmRing.getAllocatedBytes() + " bytes.");
+
+            outputThread = threadFactory.newThread(new Runnable()
+            {
+                public void run()
+                {
+                    // The thread is ours and ends with the output, so nothing to restore.
+                    threadPolicy.apply();
+                    writeOutput();
+                }
+            });
+            outputThread.start();
+        }
+
         debugOutput("Done initializing the sound system.");
 
         return true;
@@ -611,72 +1306,86 @@ public class OggStreamPlayer
 		 */
         boolean needMoreData = true;
 
-        while (needMoreData && isStopped == false)
+        while (needMoreData && !isStopped())
         {
-            switch (joggSyncState.pageout(joggPage))
-            {
-                // If there is a hole in the data, we just proceed.
-                case -1:
-                {
-                    debugOutput("There is a hole in the data. We proceed.");
-                }
+            int pageResult;
 
-                // If we need more data, we break to get it.
-                case 0:
-                {
-                    break;
-                }
+            do
+            {
+                pageResult = joggSyncState.pageout(joggPage);
 
-                // If we have successfully checked out a page, we continue.
-                case 1:
+                switch (pageResult)
                 {
-                    // Give the page to the StreamState object.
-                    joggStreamState.pagein(joggPage);
+                    // If there is a hole in the data, we just proceed.
+                    case -1:
+                    {
+                        debugOutput("There is a hole in the data. We proceed.");
+                    }
 
-                    // If granulepos() returns "0", we don't need more data.
-                    if (joggPage.granulepos() == 0)
+                    // If we need more data, we break to get it.
+                    case 0:
                     {
-                        needMoreData = false;
                         break;
                     }
 
-                    // Here is where we process the packets.
-                    processPackets:
-                    while (true)
+                    // If we have successfully checked out a page, we continue.
+                    case 1:
                     {
-                        switch (joggStreamState.packetout(joggPacket))
+                        pageTaken();
+
+                        // Give the page to the StreamState object.
+                        joggStreamState.pagein(joggPage);
+
+                        // If granulepos() returns "0", we don't need more data.
+                        if (joggPage.granulepos() == 0)
                         {
-                            // Is it a hole in the data?
-                            case -1:
-                            {
-                                debugOutput("There is a hole in the data, we continue though.");
-                            }
+                            needMoreData = false;
+                            break;
+                        }
 
-                            // If we need more data, we break to get it.
-                            case 0:
+                        // Here is where we process the packets.
+                        processPackets:
+                        while (true)
+                        {
+                            switch (joggStreamState.packetout(joggPacket))
                             {
-                                break processPackets;
-                            }
-
-							/*
-							 * If we have the data we need, we decode the
-							 * packet.
-							 */
-                            case 1:
-                            {
-                                decodeCurrentPacket();
+                                // Is it a hole in the data?
+                                case -1:
+                                {
+                                    debugOutput("There is a hole in the data, we continue though.");
+                                }
+
+                                // If we need more data, we break to get it.
+                                case 0:
+                                {
+                                    break processPackets;
+                                }
+
+								/*
+								 * If we have the data we need, we decode the
+								 * packet.
+								 */
+                                case 1:
+                                {
+                                    decodeCurrentPacket();
+                                }
                             }
                         }
-                    }
 
-					/*
-					 * If the page is the end-of-stream, we don't need more
-					 * data.
-					 */
-                    if (joggPage.eos() != 0)
-                        needMoreData = false;
+						/*
+						 * If the page is the end-of-stream, we don't need more
+						 * data.
+						 */
+                        if (joggPage.eos() != 0)
+                            needMoreData = false;
+                    }
                 }
             }
+            /*
+             * In low latency mode we keep going while there are complete
+             * pages, instead of reading more data after every page.
+             */
+            while (lowLatency && pageResult != 0 && needMoreData && !isStopped());
 
             // If we need more data...
             if (needMoreData)
@@ -690,14 +1399,37 @@ public class OggStreamPlayer
                 {
                     count = inputStream.read(buffer, index, bufferSize);
                 }
-                catch (Exception e)
+                catch (IOException e)
                 {
+                    // stop() closes the stream to end the read.
+                    if (!isStopped())
+                    {
+                        Log.e(TAG, "Could not read from the input stream.", e);
+                    }
+                    count = -1;
+                }
 
-                    return;
+                /*
+                 * The connection broke off before the end of the stream. The
+                 * complete pages we have are decoded first.
+                 */
+                if (count < 0)
+                {
+                    if (pageResult != 0)
+                    {
+                        continue;
+                    }
+
+                    if (isStopped() || !reconnect())
+                    {
+                        return;
+                    }
+                    continue;
                 }
 
                 // We let SyncState know how many bytes we read.
                 joggSyncState.wrote(count);
+                received(count);
 
                 // There's no more data in the stream.
                 if (count == 0) needMoreData = false;
@@ -706,6 +1438,295 @@ public class OggStreamPlayer
         debugOutput("Done reading the body.");
     }
 
+    /**
+     * Connects again after the connection broke off, waiting longer after
+     * every failed attempt.
+     *
+     * @return true if the body can be read on, false if there is nothing left
+     *         to read or the player gave up
+     */
+    private boolean reconnect()
+    {
+        long brokenOff = System.currentTimeMillis();
+        long delay = reconnectDelayMillis;
+
+        state.compareAndSet(State.PLAYING, State.BUFFERING);
+
+        closeInputStream();
+
+        for (int attempt = 1; attempt <= maxReconnectAttempts && !isStopped(); attempt++)
+        {
+            debugOutput("Reconnecting in " + delay + " ms, attempt " + attempt + ".");
+
+            // stop() wakes us up.
+            pauseLock.lock();
+            try
+            {
+                if (!isStopped())
+                {
+                    pauseChanged.await(delay, TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            finally
+            {
+                pauseLock.unlock();
+            }
+
+            if (isStopped())
+            {
+                return false;
+            }
+
+            delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MILLIS);
+
+            try
+            {
+                boolean resumed = reopenStream();
+
+                reconnectCount++;
+                lastReconnectMillis = System.currentTimeMillis() - brokenOff;
+
+                debugOutput("Reconnected after " + lastReconnectMillis + " ms.");
+
+                return resumed;
+            }
+            catch (IOException e)
+            {
+                Log.e(TAG, "Reconnect attempt " + attempt + " failed.", e);
+
+                failedReconnectCount++;
+                closeInputStream();
+            }
+        }
+
+        return false;
+    }
+
+    /*
+     * Opens the stream again. A file with a known length is asked for from
+     * where it broke off, and needs nothing else. Anything else starts
+     * somewhere else, so we drop the partial page and pick up the stream at
+     * its next page. Returns false if nothing is left to read.
+     */
+    private boolean reopenStream() throws IOException
+    {
+        boolean contiguous = false;
+
+        if (streamCache != null)
+        {
+            inputStream = streamCache.open(streamUrl);
+
+            if (!liveStream)
+            {
+                skipFully(inputStream, streamPosition);
+                contiguous = true;
+            }
+        }
+        else
+        {
+            response = streamSource.open(streamUrl, liveStream ? 0 : streamPosition);
+            inputStream = response;
+
+            if (response.getStatusCode() == 416)
+            {
+                // The file ended where it broke off.
+                return false;
+            }
+
+            contiguous = !liveStream && response.getStart() == streamPosition;
+        }
+
+        if (contiguous)
+        {
+            return true;
+        }
+
+        joggSyncState.reset();
+
+        while (joggSyncState.pageout(joggPage) != 1)
+        {
+            readMore();
+        }
+
+        pageTaken();
+
+        if (joggPage.bos() != 0)
+        {
+            return readNewHeaders();
+        }
+
+        // The middle of a stream: decode on as if the lost part were silent.
+        joggStreamState.init(joggPage.serialno());
+        joggStreamState.reset();
+        joggStreamState.pagein(joggPage);
+        jorbisDspState.synthesis_restart();
+
+        return true;
+    }
+
+    /*
+     * Reads the headers a server sends at the start of every connection. If
+     * they are the ones we have, the decoder is only restarted; otherwise it
+     * is set up again, as long as the AudioTrack can play the new stream.
+     */
+    private boolean readNewHeaders() throws IOException
+    {
+        Info info = new Info();
+        Comment comment = new Comment();
+        byte[][] packets = new byte[3][];
+
+        info.init();
+        comment.init();
+
+        joggStreamState.init(joggPage.serialno());
+        joggStreamState.reset();
+        joggStreamState.pagein(joggPage);
+
+        int packet = 0;
+
+        while (packet < 3)
+        {
+            int result = joggStreamState.packetout(joggPacket);
+
+            if (result == 0)
+            {
+                while (joggSyncState.pageout(joggPage) != 1)
+                {
+                    readMore();
+                }
+
+                joggStreamState.pagein(joggPage);
+                continue;
+            }
+
+            if (result < 0 || info.synthesis_headerin(comment, joggPacket) < 0)
+            {
+                throw new IOException("The stream sent broken headers after reconnecting.");
+            }
+
+            packets[packet++] = copyPacket(joggPacket);
+        }
+
+        jorbisComment = comment;
+
+        // The comment may change without changing how to decode.
+        if (Arrays.equals(packets[0], headerPackets[0]) && Arrays.equals(packets[2], headerPackets[2]))
+        {
+            debugOutput("Same headers after reconnecting, the decoder is reused.");
+
+            jorbisDspState.synthesis_restart();
+            headerPackets[1] = packets[1];
+
+            return true;
+        }
+
+        if (info.channels != jorbisInfo.channels || info.rate != jorbisInfo.rate)
+        {
+            Log.e(TAG, "The stream changed to " + info.channels + " channels at "
+                    + info.rate + " Hz after reconnecting, which we can't play.");
+            return false;
+        }
+
+        debugOutput("New headers after reconnecting, the decoder is set up again.");
+
+        jorbisInfo = info;
+        jorbisDspState = new DspState();
+        jorbisDspState.synthesis_init(info);
+        jorbisBlock = new Block(jorbisDspState);
+        System.arraycopy(packets, 0, headerPackets, 0, 3);
+
+        return true;
+    }
+
+    /*
+     * Reads once from the input stream into SyncState, failing if the
+     * stream ended.
+     */
+    private void readMore() throws IOException
+    {
+        index = joggSyncState.buffer(bufferSize);
+        buffer = joggSyncState.data;
+
+        count = inputStream.read(buffer, index, bufferSize);
+
+        if (count < 0)
+        {
+            throw new IOException("The stream ended while looking for a page.");
+        }
+
+        joggSyncState.wrote(count);
+        received(count);
+    }
+
+    /*
+     * Counts bytes written to SyncState and notes when they arrived.
+     */
+    private void received(int count)
+    {
+        if (count > 0)
+        {
+            streamPosition += count;
+            readTimes.add(streamPosition, System.nanoTime());
+        }
+    }
+
+    /*
+     * Finds when the page just taken out of SyncState was complete: at the
+     * read that brought its last byte.
+     */
+    private void pageTaken()
+    {
+        long time = readTimes.reached(streamPosition - joggSyncState.unread());
+
+        if (time >= 0)
+        {
+            pageReceiveTime = time;
+        }
+    }
+
+    private static void skipFully(InputStream stream, long bytes) throws IOException
+    {
+        while (bytes > 0)
+        {
+            long skipped = stream.skip(bytes);
+
+            if (skipped <= 0)
+            {
+                throw new IOException("Could not skip to where the stream broke off.");
+            }
+
+            bytes -= skipped;
+        }
+    }
+
+    private static byte[] copyPacket(Packet packet)
+    {
+        byte[] bytes = new byte[packet.bytes];
+        System.arraycopy(packet.packet_base, packet.packet, bytes, 0, packet.bytes);
+
+        return bytes;
+    }
+
+    private void closeInputStream()
+    {
+        try
+        {
+            if (inputStream != null)
+                inputStream.close();
+        }
+        catch (IOException e)
+        {
+        }
+
+        inputStream = null;
+        response = null;
+    }
+
     /**
      * A clean-up method, called when everything is finished. Clears the
      * JOgg/JOrbis objects and closes the <code>InputStream</code>.
@@ -721,9 +1742,23 @@ public class OggStreamPlayer
         jorbisInfo.clear();
         joggSyncState.clear();
 
-        track.stop();
+        // There is no track if the header could not be read.
+        AudioTrack audioTrack = track;
+        if (audioTrack != null)
+        {
+            audioTrack.stop();
+            audioTrack.release();
+            track = null;
+        }
+
+        if (pcmRing != null)
+        {
+            pcmRing.release();
+            pcmRing = null;
+            outputThread = null;
+        }
 
-        urlConnection = null;
+        response = null;
 
         // Closes the stream.
         try
@@ -767,9 +1802,28 @@ public class OggStreamPlayer
             jorbisDspState.synthesis_blockin(jorbisBlock);
         }
 
+        /*
+         * Once the stream tells us its granule position, we number the
+         * decoded frames from there.
+         */
+        if (!positionKnown && jorbisDspState.synthesis_granulepos() >= 0)
+        {
+            decodedPosition = jorbisDspState.synthesis_granulepos() - jorbisDspState.synthesis_pcmout(null, null);
+            positionKnown = true;
+
+            if (pcmRing != null)
+            {
+                pcmRing.setWritePosition(decodedPosition);
+                ringTimes.clear();
+            }
+        }
+
         // We need to know how many samples to process.
         int range;
 
+        // And how many of them fit in the converted buffer.
+        int maximumRange = convertedBufferSize / (2 * jorbisInfo.channels);
+
 		/*
 		 * Get the PCM information and count the samples. And while these
 		 * samples are more than zero...
@@ -778,13 +1832,13 @@ public class OggStreamPlayer
                 > 0)
         {
             // We need to know for how many samples we are going to process.
-            if (samples < convertedBufferSize)
+            if (samples < maximumRange)
             {
                 range = samples;
             }
             else
             {
-                range = convertedBufferSize;
+                range = maximumRange;
             }
 
             // For each channel...
@@ -835,14 +1889,145 @@ public class OggStreamPlayer
                 }
             }
 
-            // Write the buffer to the audio output line.
+            // Write the buffer to the audio output line, or queue it.
+            if (pcmRing == null)
+            {
+                try
+                {
+                    awaitResume();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    state.set(State.STOPPED);
+                    return;
+                }
 
-            track.write(convertedBuffer, 0, 2 * jorbisInfo.channels * range);
+                if (isStopped())
+                {
+                    return;
+                }
+
+                state.compareAndSet(State.BUFFERING, State.PLAYING);
+                underrunDetector.check(framesSinceFlush, track.getPlaybackHeadPosition() - headAtFlush);
+                track.write(convertedBuffer, 0, 2 * jorbisInfo.channels * range);
+                latencyNanos = System.nanoTime() - pageReceiveTime;
 
+                outputPosition = decodedPosition + range;
+                framesSinceFlush += range;
+            }
+            else
+            {
+                try
+                {
+                    // Noted first, since the output thread may take the
+                    // frames as soon as they are in.
+                    ringTimes.add(pcmRing.getWritePosition() + range, pageReceiveTime);
+
+                    if (!pcmRing.write(convertedBuffer, 0, range))
+                    {
+                        return;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    state.set(State.STOPPED);
+                    return;
+                }
+            }
+
+            decodedPosition += range;
             jorbisDspState.synthesis_read(range);
         }
     }
 
+    /**
+     * Runs on the output thread when a PCM ring is used. Moves frames from the
+     * ring to the AudioTrack and carries out pause and replay requests.
+     */
+    private void writeOutput()
+    {
+        PcmRingBuffer ring = pcmRing;
+        AudioTrack audioTrack = track;
+        int frameSize = ring.getFrameSize();
+        byte[] output = new byte[convertedBufferSize];
+
+        try
+        {
+            while (!isStopped())
+            {
+                awaitResume();
+
+                if (replayFrames > 0)
+                {
+                    /*
+                     * Go back from the frame being heard, and drop what the
+                     * AudioTrack still has queued so the replay starts at once.
+                     */
+                    pauseLock.lock();
+                    try
+                    {
+                        long target = getPosition() - replayFrames;
+                        replayFrames = 0;
+
+                        audioTrack.pause();
+                        audioTrack.flush();
+                        headAtFlush = audioTrack.getPlaybackHeadPosition();
+                        framesSinceFlush = 0;
+
+                        ring.rewind((int) (ring.getReadPosition() - target));
+                        outputPosition = ring.getReadPosition();
+
+                        if (state.get() != State.PAUSED)
+                        {
+                            audioTrack.play();
+                        }
+                    }
+                    finally
+                    {
+                        pauseLock.unlock();
+                    }
+                    continue;
+                }
+
+                if (state.get() == State.PAUSED)
+                {
+                    continue;
+                }
+
+                int frames = ring.read(output, 0, output.length / frameSize);
+                if (frames < 0)
+                {
+                    break;
+                }
+
+                state.compareAndSet(State.BUFFERING, State.PLAYING);
+                underrunDetector.check(framesSinceFlush, audioTrack.getPlaybackHeadPosition() - headAtFlush);
+                audioTrack.write(output, 0, frames * frameSize);
+
+                outputPosition = ring.getReadPosition();
+                framesSinceFlush += frames;
+
+                // Replayed frames were measured the first time round.
+                long receiveTime = ringTimes.passed(outputPosition);
+                if (receiveTime >= 0)
+                {
+                    latencyNanos = System.nanoTime() - receiveTime;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            // Never leave the decoder waiting for room that won't come.
+            ring.close();
+        }
+    }
+
     /**
      * This method is being called internally to output debug information
      * whenever that is wanted.
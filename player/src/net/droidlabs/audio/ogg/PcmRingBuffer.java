@@ -0,0 +1,342 @@
+package net.droidlabs.audio.ogg;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ring of decoded 16-bit PCM frames that sits between the decoder and the
+ * AudioTrack. Frames are addressed by their absolute position in the stream
+ * (the granule position), so the reader can be paused, moved back over frames
+ * that were already played and asked where it is.
+ * <p/>
+ * The ring holds up to <code>aheadFrames</code> frames that have not been read
+ * yet; the writer blocks when that is reached. Frames that were read stay in
+ * the ring until they are overwritten, which keeps up to
+ * <code>historyFrames</code> of them available for a rewind.
+ * <p/>
+ * One thread writes and one thread reads. They wait on a lock rather than a
+ * monitor, so a virtual thread waiting here does not pin its carrier.
+ */
+public class PcmRingBuffer
+{
+    // Bytes held by all the rings that are not released yet.
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final byte[] data;
+    private final int frameSize;
+    private final int capacityFrames;
+    private final int aheadFrames;
+
+    // Absolute frame positions: oldest <= read <= write. The frame at
+    // position origin is stored in the first slot.
+    private long origin = 0;
+    private long oldest = 0;
+    private long read = 0;
+    private long write = 0;
+
+    private boolean closed = false;
+    private boolean released = false;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /**
+     * @param channels      the number of interleaved channels
+     * @param aheadFrames   the most frames that may be waiting to be read
+     * @param historyFrames the frames kept after they were read
+     */
+    public PcmRingBuffer(int channels, int aheadFrames, int historyFrames)
+    {
+        this.frameSize = 2 * channels;
+        this.aheadFrames = aheadFrames;
+        this.capacityFrames = aheadFrames + historyFrames;
+        this.data = new byte[capacityFrames * frameSize];
+
+        allocatedBytes.addAndGet(data.length);
+    }
+
+    /**
+     * Returns the bytes held by all rings that have not been released.
+     *
+     * @return the number of bytes
+     */
+    public static long getTotalAllocatedBytes()
+    {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Returns the bytes held by this ring.
+     *
+     * @return the number of bytes
+     */
+    public int getAllocatedBytes()
+    {
+        return data.length;
+    }
+
+    public int getFrameSize()
+    {
+        return frameSize;
+    }
+
+    public int getBufferedFrames()
+    {
+        lock.lock();
+        try
+        {
+            return (int) (write - read);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getHistoryFrames()
+    {
+        lock.lock();
+        try
+        {
+            return (int) (read - oldest);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the position of the next frame to be read.
+     *
+     * @return an absolute frame position
+     */
+    public long getReadPosition()
+    {
+        lock.lock();
+        try
+        {
+            return read;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the position the next written frame will get.
+     *
+     * @return an absolute frame position
+     */
+    public long getWritePosition()
+    {
+        lock.lock();
+        try
+        {
+            return write;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves every position so that the next written frame gets the given
+     * position. Used once the decoder learns the granule position of the
+     * stream, which need not start at zero.
+     *
+     * @param position the absolute position of the next written frame
+     */
+    public void setWritePosition(long position)
+    {
+        lock.lock();
+        try
+        {
+            long delta = position - write;
+
+            origin += delta;
+            oldest += delta;
+            read += delta;
+            write += delta;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies frames into the ring, waiting while it holds
+     * <code>aheadFrames</code> unread frames.
+     *
+     * @param buffer interleaved 16-bit frames
+     * @param offset the first byte to copy
+     * @param frames the number of frames to copy
+     * @return false if the ring was closed before all frames were written
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean write(byte[] buffer, int offset, int frames) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (frames > 0)
+            {
+                while (!closed && write - read >= aheadFrames)
+                {
+                    changed.await();
+                }
+
+                if (closed)
+                {
+                    return false;
+                }
+
+                int count = (int) Math.min(frames, aheadFrames - (write - read));
+                int position = slot(write);
+                count = Math.min(count, capacityFrames - position);
+
+                System.arraycopy(buffer, offset, data, position * frameSize, count * frameSize);
+
+                offset += count * frameSize;
+                frames -= count;
+                write += count;
+
+                // Whatever was overwritten is no longer history.
+                if (write - oldest > capacityFrames)
+                {
+                    oldest = write - capacityFrames;
+                }
+
+                changed.signalAll();
+            }
+
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies up to <code>maxFrames</code> frames out of the ring, waiting
+     * while it is empty.
+     *
+     * @param buffer where the frames go
+     * @param offset the first byte to fill
+     * @param maxFrames the most frames to copy
+     * @return the number of frames copied, or -1 if the ring was closed and
+     *         all its frames were read
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public int read(byte[] buffer, int offset, int maxFrames) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (!closed && read == write)
+            {
+                changed.await();
+            }
+
+            if (read == write)
+            {
+                return -1;
+            }
+
+            int position = slot(read);
+            int count = (int) Math.min(maxFrames, write - read);
+            count = Math.min(count, capacityFrames - position);
+
+            System.arraycopy(data, position * frameSize, buffer, offset, count * frameSize);
+
+            read += count;
+            changed.signalAll();
+
+            return count;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the read position back over frames that were already read, as
+     * far as they are still in the ring.
+     *
+     * @param frames the number of frames to go back
+     * @return the number of frames actually gone back
+     */
+    public int rewind(int frames)
+    {
+        lock.lock();
+        try
+        {
+            if (frames <= 0)
+            {
+                return 0;
+            }
+
+            int count = (int) Math.min(frames, read - oldest);
+
+            read -= count;
+            changed.signalAll();
+
+            return count;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private int slot(long position)
+    {
+        return (int) ((position - origin) % capacityFrames);
+    }
+
+    /**
+     * Marks the end of the data. Waiting writers give up, readers get what is
+     * left and then -1.
+     */
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            closed = true;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the ring and stops counting its memory.
+     */
+    public void release()
+    {
+        lock.lock();
+        try
+        {
+            close();
+
+            if (!released)
+            {
+                released = true;
+                allocatedBytes.addAndGet(-data.length);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
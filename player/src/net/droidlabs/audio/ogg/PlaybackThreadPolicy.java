@@ -0,0 +1,173 @@
+package net.droidlabs.audio.ogg;
+
+import android.util.Log;
+
+/**
+ * How the threads that decode and play audio are scheduled.
+ * <p/>
+ * On a device they should run at <code>THREAD_PRIORITY_AUDIO</code>, so that
+ * a busy UI does not keep the decoder from filling the AudioTrack in time.
+ * That priority is a Linux nice value and can only be set through
+ * <code>android.os.Process</code>; <code>Thread.setPriority()</code> does not
+ * reach it. On a JVM the plain Java priority is all there is.
+ * <p/>
+ * The player calls <code>apply()</code> on each of its threads before it
+ * starts playing, and <code>restore()</code> with what it returned when done,
+ * since <code>play()</code> may run on a thread the caller goes on using.
+ */
+public abstract class PlaybackThreadPolicy
+{
+    public static final String TAG = PlaybackThreadPolicy.class.getSimpleName();
+
+    /**
+     * Sets the scheduling of the calling thread.
+     *
+     * @return the previous setting, to be given to <code>restore()</code>
+     */
+    public abstract int apply();
+
+    /**
+     * Puts the calling thread back the way <code>apply()</code> found it.
+     *
+     * @param previous what <code>apply()</code> returned on this thread
+     */
+    public abstract void restore(int previous);
+
+    /**
+     * Returns the policy for audio playback: <code>THREAD_PRIORITY_AUDIO</code>
+     * on Android and the highest Java priority elsewhere.
+     *
+     * @return the policy
+     */
+    public static PlaybackThreadPolicy audio()
+    {
+        return isAndroid() ? android(android.os.Process.THREAD_PRIORITY_AUDIO) : jvm(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Returns a policy that sets the given Linux priority through
+     * <code>android.os.Process</code>, such as
+     * <code>THREAD_PRIORITY_AUDIO</code> or
+     * <code>THREAD_PRIORITY_URGENT_AUDIO</code>.
+     *
+     * @param threadPriority the priority, from -20 (highest) to 19
+     * @return the policy
+     */
+    public static PlaybackThreadPolicy android(final int threadPriority)
+    {
+        return new PlaybackThreadPolicy()
+        {
+            public int apply()
+            {
+                int tid = android.os.Process.myTid();
+                int previous = android.os.Process.getThreadPriority(tid);
+
+                try
+                {
+                    android.os.Process.setThreadPriority(threadPriority);
+                }
+                catch (RuntimeException e)
+                {
+                    // Raising it is not allowed everywhere; play on as we are.
+                    Log.e(TAG, "Could not set the thread priority to " + threadPriority + ".", e);
+                }
+
+                return previous;
+            }
+
+            public void restore(int previous)
+            {
+                try
+                {
+                    android.os.Process.setThreadPriority(previous);
+                }
+                catch (RuntimeException e)
+                {
+                    Log.e(TAG, "Could not restore the thread priority to " + previous + ".", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a policy that sets the given Java priority. Virtual threads
+     * ignore it.
+     *
+     * @param priority the priority, from <code>Thread.MIN_PRIORITY</code> to
+     *                 <code>Thread.MAX_PRIORITY</code>
+     * @return the policy
+     */
+    public static PlaybackThreadPolicy jvm(final int priority)
+    {
+        if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY)
+        {
+            throw new IllegalArgumentException("Priority out of range: " + priority);
+        }
+
+        return new PlaybackThreadPolicy()
+        {
+            public int apply()
+            {
+                Thread thread = Thread.currentThread();
+                int previous = thread.getPriority();
+
+                try
+                {
+                    // Capped by the thread group's maximum.
+                    thread.setPriority(priority);
+                }
+                catch (SecurityException e)
+                {
+                    Log.e(TAG, "Could not set the thread priority to " + priority + ".", e);
+                }
+
+                return previous;
+            }
+
+            public void restore(int previous)
+            {
+                try
+                {
+                    Thread.currentThread().setPriority(previous);
+                }
+                catch (SecurityException e)
+                {
+                    Log.e(TAG, "Could not restore the thread priority to " + previous + ".", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a policy that leaves the threads alone.
+     *
+     * @return the policy
+     */
+    public static PlaybackThreadPolicy none()
+    {
+        return new PlaybackThreadPolicy()
+        {
+            public int apply()
+            {
+                return 0;
+            }
+
+            public void restore(int previous)
+            {
+            }
+        };
+    }
+
+    /**
+     * Returns whether we run on Android rather than on a JVM with the Android
+     * classes stubbed out. Both Dalvik and ART call themselves Dalvik.
+     *
+     * @return true on a device or emulator
+     */
+    public static boolean isAndroid()
+    {
+        String vm = System.getProperty("java.vm.name");
+
+        return vm != null && vm.startsWith("Dalvik");
+    }
+}
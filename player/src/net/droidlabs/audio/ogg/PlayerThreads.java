@@ -0,0 +1,120 @@
+package net.droidlabs.audio.ogg;
+
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories and executors for player work.
+ * <p/>
+ * Virtual threads suit a JVM that runs thousands of mostly idle players:
+ * a player blocked on a slow stream then holds no platform thread. They are
+ * looked up by reflection, so this builds and runs where they don't exist,
+ * such as on Android, and falls back to platform threads there.
+ */
+public final class PlayerThreads
+{
+    public static final String TAG = PlayerThreads.class.getSimpleName();
+
+    private PlayerThreads()
+    {
+    }
+
+    /**
+     * Returns a factory of platform threads named <code>name-1</code>,
+     * <code>name-2</code> and so on.
+     *
+     * @param name the prefix of the thread names
+     * @return the factory
+     */
+    public static ThreadFactory platform(final String name)
+    {
+        final AtomicInteger number = new AtomicInteger();
+
+        return new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                return new Thread(runnable, name + "-" + number.incrementAndGet());
+            }
+        };
+    }
+
+    /**
+     * Returns a factory of virtual threads named like those of
+     * <code>platform()</code>, if the runtime has virtual threads.
+     *
+     * @param name the prefix of the thread names
+     * @return the factory, or null if virtual threads are not supported
+     */
+    public static ThreadFactory virtual(String name)
+    {
+        try
+        {
+            // Thread.ofVirtual().name(name + "-", 1).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+
+            Method factory = builderClass.getMethod("factory");
+
+            return (ThreadFactory) factory.invoke(builder);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the runtime has virtual threads.
+     *
+     * @return true if <code>virtual()</code> returns a factory
+     */
+    public static boolean isVirtualSupported()
+    {
+        return virtual(TAG) != null;
+    }
+
+    /**
+     * Returns a factory of virtual threads where the runtime has them, and of
+     * platform threads elsewhere.
+     *
+     * @param name the prefix of the thread names
+     * @return the factory
+     */
+    public static ThreadFactory preferVirtual(String name)
+    {
+        ThreadFactory factory = virtual(name);
+
+        if (factory == null)
+        {
+            Log.d(TAG, "Virtual threads are not supported, using platform threads.");
+            return platform(name);
+        }
+
+        return factory;
+    }
+
+    /**
+     * Returns an executor that runs every task on a new thread from the
+     * given factory.
+     *
+     * @param factory where the threads come from
+     * @return the executor
+     */
+    public static Executor threadPerTask(final ThreadFactory factory)
+    {
+        return new Executor()
+        {
+            public void execute(Runnable task)
+            {
+                factory.newThread(task).start();
+            }
+        };
+    }
+}
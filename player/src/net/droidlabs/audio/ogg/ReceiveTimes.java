@@ -0,0 +1,74 @@
+package net.droidlabs.audio.ogg;
+
+/**
+ * Remembers when positions in a stream were reached, so the time some data
+ * arrived can be looked up when it is used later. Positions are added in
+ * increasing order. The oldest ones are dropped when the buffer is full, and
+ * those already looked up are dropped as well.
+ * <p/>
+ * The player keeps one for the bytes read from the network, to find when a
+ * page was complete, and one for the frames put into the PCM ring, to find
+ * when the page they came from was received once they reach the AudioTrack.
+ */
+final class ReceiveTimes
+{
+    private static final int CAPACITY = 128;
+
+    private final long[] positions = new long[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private int first = 0;
+    private int count = 0;
+
+    synchronized void add(long position, long time)
+    {
+        if (count == CAPACITY)
+        {
+            first = (first + 1) % CAPACITY;
+            count--;
+        }
+
+        int last = (first + count) % CAPACITY;
+        positions[last] = position;
+        times[last] = time;
+        count++;
+    }
+
+    /**
+     * Returns when the given position was first reached, that is the time of
+     * the first position added at or after it, or -1 if none was. Those
+     * before it are dropped.
+     */
+    synchronized long reached(long position)
+    {
+        while (count > 0 && positions[first] < position)
+        {
+            first = (first + 1) % CAPACITY;
+            count--;
+        }
+
+        return count > 0 ? times[first] : -1;
+    }
+
+    /**
+     * Returns the time of the last position added at or before the given one,
+     * or -1 if there is none, and drops it along with those before it.
+     */
+    synchronized long passed(long position)
+    {
+        long time = -1;
+
+        while (count > 0 && positions[first] <= position)
+        {
+            time = times[first];
+            first = (first + 1) % CAPACITY;
+            count--;
+        }
+
+        return time;
+    }
+
+    synchronized void clear()
+    {
+        count = 0;
+    }
+}
@@ -0,0 +1,1159 @@
+package net.droidlabs.audio.ogg;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache on disk for media that is played more than once. Bytes read from the
+ * network are written to a file per URL as they arrive, and later reads of the
+ * same bytes, for a replay or a seek, come from that file instead.
+ * <p/>
+ * A file need not be complete: every entry keeps the ranges of bytes it holds,
+ * and only the missing ranges are fetched. When the cache grows past its size
+ * the entries used least recently are deleted.
+ * <p/>
+ * Only responses that tell their length are cached, so live streams pass
+ * through untouched.
+ */
+public class StreamCache
+{
+    public static final String TAG = StreamCache.class.getSimpleName();
+
+    private static final int INDEX_MAGIC = 0x4f674361;
+    private static final int INDEX_VERSION = 1;
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String INDEX_SUFFIX = ".index";
+
+    private final File directory;
+    private final long maxBytes;
+    private final StreamSource source;
+
+    // Least recently used first.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /*
+     * Locks rather than monitors, since disk reads and writes happen while
+     * they are held and a virtual thread must not pin its carrier meanwhile.
+     * An entry's lock may be held while taking the cache's, not the reverse,
+     * so evicted entries are deleted after the cache's lock is released.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Evicted entries whose files are being deleted. A new entry for the same
+    // URL waits until they are gone, since it uses the same files.
+    private final Set<String> deleting = new HashSet<String>();
+    private final Condition deleted = lock.newCondition();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+
+    /**
+     * Opens the cache in the given directory and picks up the entries that
+     * were left there.
+     *
+     * @param directory where the cached files are kept
+     * @param maxBytes  the most bytes kept in all entries together
+     */
+    public StreamCache(File directory, long maxBytes)
+    {
+        this(directory, maxBytes, StreamSource.getDefault());
+    }
+
+    /**
+     * @param directory where the cached files are kept
+     * @param maxBytes  the most bytes kept in all entries together
+     * @param source    what opens the connections for missing bytes
+     */
+    public StreamCache(File directory, long maxBytes, StreamSource source)
+    {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.source = source;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            Log.e(TAG, "Could not create the cache directory " + directory);
+        }
+
+        load();
+    }
+
+    /**
+     * Opens the given URL for reading from the start. Bytes already on disk
+     * are read from there, the rest is fetched and written to disk as it is
+     * read.
+     *
+     * @param url the media to read
+     * @return a stream of the whole file
+     * @throws IOException if the URL can't be opened
+     */
+    public InputStream open(URL url) throws IOException
+    {
+        Entry entry = acquire(url);
+        CachedInputStream stream = new CachedInputStream(url, entry);
+
+        // Find out at once if the URL can be read at all.
+        try
+        {
+            stream.prepare();
+        }
+        catch (IOException e)
+        {
+            stream.close();
+            throw e;
+        }
+
+        return stream;
+    }
+
+    /**
+     * Reads bytes from disk, but only if all of them are there. Counts a hit
+     * if they are and a miss otherwise.
+     *
+     * @param url      the media
+     * @param position the offset of the first byte in the file
+     * @param buffer   where the bytes go
+     * @param offset   the first byte to fill
+     * @param length   the number of bytes to read
+     * @return true if the bytes were read
+     * @throws IOException if the cached file can't be read
+     */
+    public boolean read(URL url, long position, byte[] buffer, int offset, int length) throws IOException
+    {
+        Entry entry = get(url);
+
+        if (entry == null || entry.cached(position) < length)
+        {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        try
+        {
+            entry.read(position, buffer, offset, length);
+        }
+        catch (IOException e)
+        {
+            // Evicted meanwhile, or the file is gone: fetch it again.
+            Log.e(TAG, "Could not read the cached bytes of " + url, e);
+            misses.incrementAndGet();
+            return false;
+        }
+
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(length);
+
+        return true;
+    }
+
+    /**
+     * Writes fetched bytes to disk.
+     *
+     * @param url      the media
+     * @param position the offset of the first byte in the file
+     * @param buffer   the bytes
+     * @param offset   the first byte to write
+     * @param length   the number of bytes
+     * @param total    the length of the whole file, or -1 if it is unknown, in
+     *                 which case nothing is written
+     * @throws IOException if the cached file can't be written
+     */
+    public void write(URL url, long position, byte[] buffer, int offset, int length, long total) throws IOException
+    {
+        bytesDownloaded.addAndGet(length);
+
+        if (total < 0 || total > maxBytes)
+        {
+            return;
+        }
+
+        Entry entry = acquire(url);
+
+        try
+        {
+            entry.checkLength(total);
+            entry.write(position, buffer, offset, length);
+        }
+        finally
+        {
+            release(entry);
+        }
+    }
+
+    /**
+     * Returns the length of a cached file, as the server told it when the
+     * file was first fetched.
+     *
+     * @param url the media
+     * @return the length, or -1 if nothing of the file is cached
+     */
+    public long getLength(URL url)
+    {
+        Entry entry = get(url);
+
+        return entry == null ? -1 : entry.length;
+    }
+
+    /**
+     * Writes the ranges of every entry to disk, so they are found again the
+     * next time the cache is opened.
+     */
+    public void flush()
+    {
+        List<Entry> all;
+
+        lock.lock();
+        try
+        {
+            all = new ArrayList<Entry>(entries.values());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        for (Entry entry : all)
+        {
+            entry.saveIndex();
+        }
+    }
+
+    /**
+     * Deletes every entry that is not being read.
+     */
+    public void clear()
+    {
+        List<Entry> victims;
+
+        lock.lock();
+        try
+        {
+            victims = evict(0);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        delete(victims);
+    }
+
+    /**
+     * Returns the bytes held in all entries.
+     *
+     * @return the number of bytes
+     */
+    public long getSize()
+    {
+        lock.lock();
+        try
+        {
+            return totalBytes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxSize()
+    {
+        return maxBytes;
+    }
+
+    public StreamSource getStreamSource()
+    {
+        return source;
+    }
+
+    /**
+     * Returns how often bytes could be read from disk. A hit is a run of bytes
+     * read from disk without going to the network in between.
+     *
+     * @return the number of hits
+     */
+    public int getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns how often bytes had to be fetched from the network.
+     *
+     * @return the number of misses
+     */
+    public int getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the bytes read from disk that would otherwise have been fetched.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesSaved()
+    {
+        return bytesSaved.get();
+    }
+
+    /**
+     * Returns the bytes fetched from the network through this cache.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesDownloaded()
+    {
+        return bytesDownloaded.get();
+    }
+
+    private Entry get(URL url)
+    {
+        lock.lock();
+        try
+        {
+            return entries.get(url.toString());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Finds or creates the entry of a URL and keeps it from being evicted
+     * until it is released.
+     */
+    private Entry acquire(URL url)
+    {
+        lock.lock();
+        try
+        {
+            String key = url.toString();
+
+            while (deleting.contains(key))
+            {
+                deleted.awaitUninterruptibly();
+            }
+
+            Entry entry = entries.get(key);
+
+            if (entry == null)
+            {
+                String name = fileName(key);
+
+                entry = new Entry(key, new File(directory, name + DATA_SUFFIX), new File(directory, name + INDEX_SUFFIX));
+                entries.put(key, entry);
+            }
+
+            entry.users++;
+
+            return entry;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void release(Entry entry)
+    {
+        lock.lock();
+        try
+        {
+            if (--entry.users > 0)
+            {
+                return;
+            }
+
+            // A live stream never told its length and left nothing on disk.
+            if (entry.length < 0 && entry.cachedBytes == 0 && entries.get(entry.key) == entry)
+            {
+                entries.remove(entry.key);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        entry.close();
+
+        List<Entry> victims;
+
+        lock.lock();
+        try
+        {
+            victims = evict(maxBytes);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        delete(victims);
+    }
+
+    private void added(Entry entry, long bytes)
+    {
+        List<Entry> victims;
+
+        lock.lock();
+        try
+        {
+            entry.cachedBytes += bytes;
+            totalBytes += bytes;
+            victims = evict(maxBytes);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        delete(victims);
+    }
+
+    /*
+     * Takes the least recently used entries out of the cache until it holds
+     * no more than the given bytes, and returns them to be deleted once the
+     * cache's lock is released. Entries being read are skipped.
+     */
+    private List<Entry> evict(long limit)
+    {
+        List<Entry> victims = new ArrayList<Entry>();
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (totalBytes > limit && iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+
+            if (entry.users > 0)
+            {
+                continue;
+            }
+
+            iterator.remove();
+            totalBytes -= entry.cachedBytes;
+            deleting.add(entry.key);
+            victims.add(entry);
+        }
+
+        return victims;
+    }
+
+    /*
+     * Deletes the files of entries evict() took out.
+     */
+    private void delete(List<Entry> victims)
+    {
+        if (victims.isEmpty())
+        {
+            return;
+        }
+
+        for (Entry entry : victims)
+        {
+            entry.delete();
+        }
+
+        lock.lock();
+        try
+        {
+            for (Entry entry : victims)
+            {
+                deleting.remove(entry.key);
+            }
+
+            deleted.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Reads the index of every entry in the directory, the oldest first so the
+     * order of use survives.
+     */
+    private void load()
+    {
+        List<Entry> victims;
+
+        lock.lock();
+        try
+        {
+            File[] files = directory.listFiles();
+
+            if (files == null)
+            {
+                return;
+            }
+
+            List<File> indexes = new ArrayList<File>();
+
+            for (File file : files)
+            {
+                if (file.getName().endsWith(INDEX_SUFFIX))
+                {
+                    indexes.add(file);
+                }
+            }
+
+            Collections.sort(indexes, new Comparator<File>()
+            {
+                public int compare(File a, File b)
+                {
+                    long x = a.lastModified();
+                    long y = b.lastModified();
+
+                    return x < y ? -1 : (x == y ? 0 : 1);
+                }
+            });
+
+            for (File index : indexes)
+            {
+                String name = index.getName();
+                File data = new File(directory, name.substring(0, name.length() - INDEX_SUFFIX.length()) + DATA_SUFFIX);
+                Entry entry = loadEntry(index, data);
+
+                if (entry == null)
+                {
+                    index.delete();
+                    data.delete();
+                    continue;
+                }
+
+                entries.put(entry.key, entry);
+                totalBytes += entry.cachedBytes;
+            }
+
+            victims = evict(maxBytes);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        delete(victims);
+    }
+
+    private Entry loadEntry(File index, File data)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(index));
+
+            try
+            {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION)
+                {
+                    return null;
+                }
+
+                Entry entry = new Entry(in.readUTF(), data, index);
+                entry.length = in.readLong();
+
+                int ranges = in.readInt();
+                long end = -1;
+
+                for (int i = 0; i < ranges; i++)
+                {
+                    long start = in.readLong();
+
+                    // The ranges must be sorted and lie within the data file.
+                    if (start <= end)
+                    {
+                        return null;
+                    }
+
+                    end = in.readLong();
+
+                    if (end <= start || end > data.length())
+                    {
+                        return null;
+                    }
+
+                    entry.cachedBytes += entry.add(start, end);
+                }
+
+                return entry;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Could not read " + index, e);
+            return null;
+        }
+    }
+
+    private static String fileName(String key)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder();
+
+            for (byte b : digest)
+            {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+
+            return name.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(key.hashCode());
+        }
+        catch (IOException e)
+        {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    /*
+     * Reads a URL from the start, from disk where the entry has the bytes and
+     * from the network where it hasn't. A connection is only opened where the
+     * bytes on disk end, with a Range request if that is not the start.
+     * Closing it from another thread ends a read blocked on the network.
+     */
+    private class CachedInputStream extends InputStream
+    {
+        private final URL url;
+        private final Entry entry;
+
+        private volatile StreamSource.Response network;
+        private long position = 0;
+        private long total;
+        private boolean fromDisk = false;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        CachedInputStream(URL url, Entry entry)
+        {
+            this.url = url;
+            this.entry = entry;
+            this.total = entry.length;
+        }
+
+        void prepare() throws IOException
+        {
+            if (entry.cached(0) == 0)
+            {
+                connect();
+            }
+        }
+
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+
+            return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+
+            if (closed.get())
+            {
+                throw new IOException("The stream from " + url + " was closed.");
+            }
+
+            if (total >= 0 && position >= total)
+            {
+                return -1;
+            }
+
+            long onDisk = entry.cached(position);
+
+            if (onDisk > 0)
+            {
+                if (!fromDisk)
+                {
+                    hits.incrementAndGet();
+                    fromDisk = true;
+                }
+
+                // The connection would be at the wrong place afterwards.
+                disconnect();
+
+                int count = (int) Math.min(length, onDisk);
+                entry.read(position, buffer, offset, count);
+
+                bytesSaved.addAndGet(count);
+                position += count;
+
+                return count;
+            }
+
+            StreamSource.Response response = network;
+
+            if (response == null)
+            {
+                response = connect();
+            }
+
+            fromDisk = false;
+
+            int count = response.read(buffer, offset, length);
+
+            if (count <= 0)
+            {
+                return count;
+            }
+
+            bytesDownloaded.addAndGet(count);
+
+            if (total >= 0 && total <= maxBytes)
+            {
+                entry.write(position, buffer, offset, count);
+            }
+
+            position += count;
+
+            return count;
+        }
+
+        /*
+         * Opens a connection that starts at the current position and learns
+         * the length of the file from the response.
+         */
+        private StreamSource.Response connect() throws IOException
+        {
+            misses.incrementAndGet();
+
+            StreamSource.Response response = source.open(url, position);
+
+            if (response.getStatusCode() == 416)
+            {
+                // Nothing is left past the position.
+                total = position;
+            }
+            else
+            {
+                total = response.getLength();
+            }
+
+            network = response;
+
+            // Closed while connecting: nobody else will close this one.
+            if (closed.get())
+            {
+                disconnect();
+                throw new IOException("The stream from " + url + " was closed.");
+            }
+
+            if (total >= 0)
+            {
+                entry.checkLength(total);
+            }
+
+            return response;
+        }
+
+        private void disconnect()
+        {
+            StreamSource.Response response = network;
+
+            if (response != null)
+            {
+                network = null;
+                response.close();
+            }
+        }
+
+        public void close()
+        {
+            if (!closed.compareAndSet(false, true))
+            {
+                return;
+            }
+
+            disconnect();
+            release(entry);
+            entry.saveIndex();
+        }
+    }
+
+    // Content-Range: bytes start-end/total
+    static long totalOf(String range)
+    {
+        int slash = range != null ? range.lastIndexOf('/') : -1;
+
+        if (slash < 0 || range.endsWith("*"))
+        {
+            return -1;
+        }
+
+        return lengthOf(range.substring(slash + 1));
+    }
+
+    static long lengthOf(String length)
+    {
+        try
+        {
+            return length == null ? -1 : Long.parseLong(length.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /*
+     * One cached file: a sparse data file and the sorted, disjoint ranges of
+     * bytes it holds. The fields used for eviction are guarded by the cache,
+     * the ranges and the file by the entry.
+     */
+    private class Entry
+    {
+        final String key;
+        final File data;
+        final File index;
+
+        volatile long length = -1;
+        long cachedBytes = 0;
+        int users = 0;
+
+        private long[] starts = new long[4];
+        private long[] ends = new long[4];
+        private int ranges = 0;
+
+        private final ReentrantLock entryLock = new ReentrantLock();
+        private RandomAccessFile file;
+        private boolean dirty = false;
+        private boolean deleted = false;
+
+        Entry(String key, File data, File index)
+        {
+            this.key = key;
+            this.data = data;
+            this.index = index;
+        }
+
+        /*
+         * Returns the number of bytes on disk from the given position on,
+         * without a gap.
+         */
+        long cached(long position)
+        {
+            entryLock.lock();
+            try
+            {
+                if (deleted)
+                {
+                    return 0;
+                }
+
+                int range = find(position);
+
+                if (range < 0 || ends[range] <= position)
+                {
+                    return 0;
+                }
+
+                return ends[range] - position;
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+        void read(long position, byte[] buffer, int offset, int length) throws IOException
+        {
+            entryLock.lock();
+            try
+            {
+                open().seek(position);
+                file.readFully(buffer, offset, length);
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+        void write(long position, byte[] buffer, int offset, int length) throws IOException
+        {
+            entryLock.lock();
+            try
+            {
+                if (deleted || length <= 0)
+                {
+                    return;
+                }
+
+                open().seek(position);
+                file.write(buffer, offset, length);
+
+                long added = add(position, position + length);
+                dirty = true;
+
+                if (added > 0)
+                {
+                    added(this, added);
+                }
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+        /*
+         * A file whose length changed on the server is a different file, so
+         * what we have of it is dropped.
+         */
+        void checkLength(long total)
+        {
+            entryLock.lock();
+            try
+            {
+                if (length == total)
+                {
+                    return;
+                }
+
+                if (length >= 0)
+                {
+                    added(this, -cachedBytes);
+
+                    ranges = 0;
+                }
+
+                length = total;
+                dirty = true;
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+        private RandomAccessFile open() throws IOException
+        {
+            if (deleted)
+            {
+                throw new IOException(key + " was evicted from the cache");
+            }
+
+            if (file == null)
+            {
+                file = new RandomAccessFile(data, "rw");
+            }
+
+            return file;
+        }
+
+        void close()
+        {
+            entryLock.lock();
+            try
+            {
+                if (file != null)
+                {
+                    try
+                    {
+                        file.close();
+                    }
+                    catch (IOException e)
+                    {
+                        Log.e(TAG, "Could not close " + data, e);
+                    }
+
+                    file = null;
+                }
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+        void delete()
+        {
+            entryLock.lock();
+            try
+            {
+                close();
+
+                deleted = true;
+                ranges = 0;
+
+                data.delete();
+                index.delete();
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+        /*
+         * Returns the last range that starts at or before the position, or -1.
+         */
+        private int find(long position)
+        {
+            int low = 0;
+            int high = ranges - 1;
+            int found = -1;
+
+            while (low <= high)
+            {
+                int middle = (low + high) >>> 1;
+
+                if (starts[middle] <= position)
+                {
+                    found = middle;
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle - 1;
+                }
+            }
+
+            return found;
+        }
+
+        /*
+         * Adds a range, merging it with the ranges it touches, and returns the
+         * number of bytes that were not covered before.
+         */
+        long add(long start, long end)
+        {
+            int first = find(start);
+
+            if (first < 0 || ends[first] < start)
+            {
+                first++;
+            }
+
+            int last = find(end);
+            long added = end - start;
+
+            for (int i = first; i <= last; i++)
+            {
+                added -= Math.min(ends[i], end) - Math.max(starts[i], start);
+            }
+
+            if (first <= last)
+            {
+                start = Math.min(start, starts[first]);
+                end = Math.max(end, ends[last]);
+            }
+            else if (ranges == starts.length)
+            {
+                starts = Arrays.copyOf(starts, ranges * 2);
+                ends = Arrays.copyOf(ends, ranges * 2);
+            }
+
+            // Ranges first to last become the one merged range.
+            int tail = ranges - (last + 1);
+
+            System.arraycopy(starts, last + 1, starts, first + 1, tail);
+            System.arraycopy(ends, last + 1, ends, first + 1, tail);
+
+            starts[first] = start;
+            ends[first] = end;
+            ranges += first - last;
+
+            return added;
+        }
+
+        void saveIndex()
+        {
+            entryLock.lock();
+            try
+            {
+                if (!dirty || deleted)
+                {
+                    index.setLastModified(System.currentTimeMillis());
+                    return;
+                }
+
+                File temporary = new File(index.getPath() + ".tmp");
+
+                try
+                {
+                    DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+
+                    try
+                    {
+                        out.writeInt(INDEX_MAGIC);
+                        out.writeInt(INDEX_VERSION);
+                        out.writeUTF(key);
+                        out.writeLong(length);
+                        out.writeInt(ranges);
+
+                        for (int i = 0; i < ranges; i++)
+                        {
+                            out.writeLong(starts[i]);
+                            out.writeLong(ends[i]);
+                        }
+                    }
+                    finally
+                    {
+                        out.close();
+                    }
+
+                    if (!temporary.renameTo(index))
+                    {
+                        index.delete();
+                        temporary.renameTo(index);
+                    }
+
+                    dirty = false;
+                }
+                catch (IOException e)
+                {
+                    Log.e(TAG, "Could not write " + index, e);
+                    temporary.delete();
+                }
+            }
+            finally
+            {
+                entryLock.unlock();
+            }
+        }
+
+    }
+}
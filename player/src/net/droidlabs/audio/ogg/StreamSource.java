@@ -0,0 +1,1052 @@
+package net.droidlabs.audio.ogg;
+
+import android.util.Log;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Opens media URLs for the player. HTTP is spoken over sockets of our own, so
+ * that we can set connect and read timeouts and the socket receive buffer, and
+ * keep connections open for the next request to the same host.
+ * <p/>
+ * Shoutcast and Icecast servers mix metadata into the audio when asked with
+ * <code>Icy-MetaData: 1</code>. The metadata is taken out of the stream here,
+ * so only audio reaches the decoder, and is handed to a listener.
+ * <p/>
+ * URLs other than http and https are opened with <code>URLConnection</code>.
+ */
+public class StreamSource
+{
+    public static final String TAG = StreamSource.class.getSimpleName();
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 15000;
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_IDLE_PER_HOST = 4;
+    private static final long IDLE_TIMEOUT_MILLIS = 30000;
+    private static final String USER_AGENT = "AndroidOggStreamPlayer";
+
+    private static final StreamSource defaultSource = new StreamSource();
+
+    /**
+     * Receives the metadata taken out of a stream.
+     */
+    public interface MetadataListener
+    {
+        /**
+         * Called on the thread reading the stream.
+         *
+         * @param url      the stream
+         * @param metadata the metadata as sent, such as
+         *                 <code>StreamTitle='...';</code>
+         */
+        public void metadataReceived(URL url, String metadata);
+    }
+
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+    private volatile int receiveBufferSize = 0;
+    private volatile boolean icyMetadata = true;
+    private volatile MetadataListener metadataListener;
+    private volatile SSLSocketFactory sslSocketFactory;
+    private volatile HostnameVerifier hostnameVerifier;
+
+    // Idle connections by host, the most recently used last.
+    private final Map<String, LinkedList<Connection>> idle = new HashMap<String, LinkedList<Connection>>();
+
+    private volatile int connectionsOpened = 0;
+    private volatile int connectionsReused = 0;
+
+    /**
+     * Returns the source shared by players that were not given one, so they
+     * share its connections as well.
+     *
+     * @return the shared source
+     */
+    public static StreamSource getDefault()
+    {
+        return defaultSource;
+    }
+
+    /**
+     * @param connectTimeout the milliseconds to wait for a connection, 0 to
+     *                       wait forever
+     */
+    public void setConnectTimeout(int connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    /**
+     * @param readTimeout the milliseconds a read may wait for data, 0 to wait
+     *                    forever
+     */
+    public void setReadTimeout(int readTimeout)
+    {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getReadTimeout()
+    {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the receive buffer of new sockets. A larger buffer rides out longer
+     * stalls of the reading thread without the server slowing down.
+     *
+     * @param receiveBufferSize the size in bytes, 0 for the system default
+     */
+    public void setReceiveBufferSize(int receiveBufferSize)
+    {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getReceiveBufferSize()
+    {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Sets whether servers are asked to send metadata. It is on by default.
+     *
+     * @param icyMetadata true to ask for metadata
+     */
+    public void setIcyMetadata(boolean icyMetadata)
+    {
+        this.icyMetadata = icyMetadata;
+    }
+
+    /**
+     * Sets the factory for https connections, such as one that trusts a
+     * private certificate authority.
+     *
+     * @param sslSocketFactory the factory, or null for the one of
+     *                         <code>HttpsURLConnection</code>
+     */
+    public void setSslSocketFactory(SSLSocketFactory sslSocketFactory)
+    {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * Sets what checks that the certificate of an https server is for its
+     * host. A connection whose certificate fails the check is closed. The
+     * default verifier checks the host on Android, but on a desktop JVM it
+     * rejects every host, so one must be set there.
+     *
+     * @param hostnameVerifier the verifier, or null for the one of
+     *                         <code>HttpsURLConnection</code>
+     */
+    public void setHostnameVerifier(HostnameVerifier hostnameVerifier)
+    {
+        this.hostnameVerifier = hostnameVerifier;
+    }
+
+    public void setMetadataListener(MetadataListener metadataListener)
+    {
+        this.metadataListener = metadataListener;
+    }
+
+    /**
+     * Returns the number of connections opened, not counting the ones that
+     * were reused.
+     *
+     * @return the number of connections
+     */
+    public int getConnectionsOpened()
+    {
+        return connectionsOpened;
+    }
+
+    /**
+     * Returns how often an idle connection was used again.
+     *
+     * @return the number of reuses
+     */
+    public int getConnectionsReused()
+    {
+        return connectionsReused;
+    }
+
+    /**
+     * Opens a URL from the given byte on.
+     *
+     * @param url      the media
+     * @param position the first byte wanted
+     * @return the response, whose <code>getStart()</code> tells where it
+     *         really starts
+     * @throws IOException if the URL can't be opened
+     */
+    public Response open(URL url, long position) throws IOException
+    {
+        return open(url, position, -1);
+    }
+
+    /**
+     * Opens a range of bytes of a URL. The response is empty, with status 416,
+     * if the range starts past the end.
+     *
+     * @param url   the media
+     * @param start the first byte wanted
+     * @param end   the byte after the last one wanted, or -1 for all
+     * @return the response
+     * @throws IOException if the URL can't be opened or answers with an error
+     */
+    public Response open(URL url, long start, long end) throws IOException
+    {
+        for (int redirect = 0; redirect <= MAX_REDIRECTS; redirect++)
+        {
+            String protocol = url.getProtocol();
+
+            if (!protocol.equals("http") && !protocol.equals("https"))
+            {
+                return openOther(url, start);
+            }
+
+            Response response = request(url, start, end);
+            int code = response.getStatusCode();
+
+            if (code >= 300 && code < 400 && response.getHeaderField("location") != null)
+            {
+                URL location = new URL(url, response.getHeaderField("location"));
+                response.close();
+                url = location;
+                continue;
+            }
+
+            if (code == 416 || (code >= 200 && code < 300))
+            {
+                return response;
+            }
+
+            response.close();
+            throw new IOException(url + " answered with " + code);
+        }
+
+        throw new IOException("Too many redirects for " + url);
+    }
+
+    /**
+     * Closes every idle connection.
+     */
+    public void closeIdleConnections()
+    {
+        synchronized (idle)
+        {
+            for (LinkedList<Connection> connections : idle.values())
+            {
+                for (Connection connection : connections)
+                {
+                    connection.close();
+                }
+            }
+
+            idle.clear();
+        }
+    }
+
+    /*
+     * Sends the request on an idle connection if there is one. A server may
+     * have closed that connection meanwhile, so a failure on it is tried once
+     * more on a new one.
+     */
+    private Response request(URL url, long start, long end) throws IOException
+    {
+        Connection connection = takeIdle(url);
+
+        if (connection != null)
+        {
+            try
+            {
+                return connection.request(url, start, end);
+            }
+            catch (IOException e)
+            {
+                connection.close();
+            }
+        }
+
+        connection = connect(url);
+
+        try
+        {
+            return connection.request(url, start, end);
+        }
+        catch (IOException e)
+        {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private Connection connect(URL url) throws IOException
+    {
+        boolean secure = url.getProtocol().equals("https");
+        int port = url.getPort() != -1 ? url.getPort() : (secure ? 443 : 80);
+
+        Socket socket = new Socket();
+
+        // Must be set before connecting to count for the TCP window.
+        if (receiveBufferSize > 0)
+        {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+
+        try
+        {
+            socket.connect(new InetSocketAddress(url.getHost(), port), connectTimeout);
+            socket.setSoTimeout(readTimeout);
+
+            if (secure)
+            {
+                socket = secure(socket, url.getHost(), port);
+            }
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        connectionsOpened++;
+
+        return new Connection(key(url), socket);
+    }
+
+    /*
+     * Starts TLS over the connected socket. SSLSocket checks the certificate
+     * chain but not that it is for the host, so that is checked here, as
+     * HttpsURLConnection does.
+     */
+    private Socket secure(Socket socket, String host, int port) throws IOException
+    {
+        SSLSocketFactory factory = sslSocketFactory;
+        HostnameVerifier verifier = hostnameVerifier;
+
+        if (factory == null)
+        {
+            factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+
+        if (verifier == null)
+        {
+            verifier = HttpsURLConnection.getDefaultHostnameVerifier();
+        }
+
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+
+        try
+        {
+            sslSocket.startHandshake();
+
+            if (!verifier.verify(host, sslSocket.getSession()))
+            {
+                throw new SSLPeerUnverifiedException("The certificate of " + host + " is not for that host");
+            }
+        }
+        catch (IOException e)
+        {
+            sslSocket.close();
+            throw e;
+        }
+
+        return sslSocket;
+    }
+
+    private Connection takeIdle(URL url)
+    {
+        synchronized (idle)
+        {
+            LinkedList<Connection> connections = idle.get(key(url));
+
+            while (connections != null && !connections.isEmpty())
+            {
+                Connection connection = connections.removeLast();
+
+                if (System.currentTimeMillis() - connection.idleSince < IDLE_TIMEOUT_MILLIS)
+                {
+                    connectionsReused++;
+                    return connection;
+                }
+
+                connection.close();
+            }
+
+            return null;
+        }
+    }
+
+    private void putIdle(Connection connection)
+    {
+        synchronized (idle)
+        {
+            LinkedList<Connection> connections = idle.get(connection.key);
+
+            if (connections == null)
+            {
+                connections = new LinkedList<Connection>();
+                idle.put(connection.key, connections);
+            }
+
+            connection.idleSince = System.currentTimeMillis();
+            connections.addLast(connection);
+
+            while (connections.size() > MAX_IDLE_PER_HOST)
+            {
+                connections.removeFirst().close();
+            }
+
+            // Drop what has been idle too long anywhere.
+            for (Iterator<LinkedList<Connection>> hosts = idle.values().iterator(); hosts.hasNext(); )
+            {
+                LinkedList<Connection> list = hosts.next();
+
+                while (!list.isEmpty() && System.currentTimeMillis() - list.getFirst().idleSince >= IDLE_TIMEOUT_MILLIS)
+                {
+                    list.removeFirst().close();
+                }
+
+                if (list.isEmpty())
+                {
+                    hosts.remove();
+                }
+            }
+        }
+    }
+
+    private static String key(URL url)
+    {
+        return url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+    }
+
+    /*
+     * Anything but HTTP: no ranges, so we skip to the position.
+     */
+    private Response openOther(URL url, long start) throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+
+        Response response = new Response(url, null, connection.getInputStream(), 200, new HashMap<String, String>());
+        response.length = connection.getContentLength();
+        response.remaining = -1;
+
+        try
+        {
+            response.skipFully(start);
+        }
+        catch (IOException e)
+        {
+            response.close();
+            throw e;
+        }
+
+        response.start = start;
+
+        return response;
+    }
+
+    /*
+     * A socket to a host and the streams on it.
+     */
+    private class Connection
+    {
+        final String key;
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        long idleSince;
+
+        Connection(String key, Socket socket) throws IOException
+        {
+            this.key = key;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = socket.getOutputStream();
+        }
+
+        Response request(URL url, long start, long end) throws IOException
+        {
+            String path = url.getFile().length() == 0 ? "/" : url.getFile();
+            StringBuilder request = new StringBuilder();
+
+            request.append("GET ").append(path).append(" HTTP/1.1\r\n");
+            request.append("Host: ").append(url.getHost());
+
+            if (url.getPort() != -1)
+            {
+                request.append(':').append(url.getPort());
+            }
+
+            request.append("\r\n");
+            request.append("User-Agent: ").append(USER_AGENT).append("\r\n");
+            request.append("Accept: */*\r\n");
+
+            if (start > 0 || end >= 0)
+            {
+                request.append("Range: bytes=").append(start).append('-');
+
+                if (end >= 0)
+                {
+                    request.append(end - 1);
+                }
+
+                request.append("\r\n");
+            }
+
+            if (icyMetadata)
+            {
+                request.append("Icy-MetaData: 1\r\n");
+            }
+
+            request.append("Connection: keep-alive\r\n\r\n");
+
+            out.write(request.toString().getBytes("ISO-8859-1"));
+            out.flush();
+
+            // HTTP/1.1 200 OK, or ICY 200 OK from old Shoutcast servers.
+            String status = readLine(in);
+
+            if (status == null)
+            {
+                throw new EOFException("The connection to " + url + " was closed.");
+            }
+
+            String[] parts = status.split(" ", 3);
+
+            if (parts.length < 2)
+            {
+                throw new IOException("Bad status line from " + url + ": " + status);
+            }
+
+            int code;
+
+            try
+            {
+                code = Integer.parseInt(parts[1]);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Bad status line from " + url + ": " + status);
+            }
+
+            Map<String, String> headers = new HashMap<String, String>();
+            String line;
+
+            while ((line = readLine(in)) != null && line.length() > 0)
+            {
+                int colon = line.indexOf(':');
+
+                if (colon > 0)
+                {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+                }
+            }
+
+            Response response = new Response(url, this, in, code, headers);
+
+            String connection = headers.get("connection");
+            boolean http11 = parts[0].equals("HTTP/1.1");
+
+            response.keepAlive = connection != null ? connection.equalsIgnoreCase("keep-alive") : http11;
+
+            if (code == 206)
+            {
+                String range = headers.get("content-range");
+                response.start = rangeStart(range, start);
+                response.length = StreamCache.totalOf(range);
+            }
+            else
+            {
+                response.start = 0;
+                response.length = code == 200 ? StreamCache.lengthOf(headers.get("content-length")) : -1;
+            }
+
+            if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding")))
+            {
+                response.chunked = true;
+                response.remaining = -1;
+            }
+            else if (headers.containsKey("content-length"))
+            {
+                response.remaining = StreamCache.lengthOf(headers.get("content-length"));
+            }
+            else if (code == 416 || code == 204 || code == 304)
+            {
+                response.remaining = 0;
+            }
+            else
+            {
+                // Until the server closes the connection.
+                response.remaining = -1;
+                response.keepAlive = false;
+            }
+
+            String metaInt = headers.get("icy-metaint");
+
+            if (metaInt != null)
+            {
+                response.metaInterval = (int) StreamCache.lengthOf(metaInt);
+                response.untilMetadata = response.metaInterval;
+            }
+
+            if (response.remaining == 0 && !response.chunked)
+            {
+                response.finish();
+            }
+
+            if (code == 200 && start > 0)
+            {
+                // The server ignored the range and sends it all.
+                response.skipFully(start);
+                response.start = start;
+            }
+
+            return response;
+        }
+
+        void close()
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                Log.e(TAG, "Could not close a connection to " + key, e);
+            }
+        }
+    }
+
+    // Content-Range: bytes start-end/total
+    private static long rangeStart(String range, long start)
+    {
+        if (range == null)
+        {
+            return start;
+        }
+
+        int space = range.indexOf(' ');
+        int dash = range.indexOf('-');
+
+        if (space < 0 || dash < space)
+        {
+            return start;
+        }
+
+        long parsed = StreamCache.lengthOf(range.substring(space + 1, dash));
+
+        return parsed < 0 ? start : parsed;
+    }
+
+    private static String readLine(InputStream in) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = in.read()) != -1)
+        {
+            if (c == '\n')
+            {
+                int length = line.length();
+
+                if (length > 0 && line.charAt(length - 1) == '\r')
+                {
+                    line.setLength(length - 1);
+                }
+
+                return line.toString();
+            }
+
+            line.append((char) c);
+        }
+
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * The body of a response, without any metadata in it. Closing it before
+     * the end closes the connection; reading it to the end lets the
+     * connection be used again.
+     */
+    public class Response extends InputStream
+    {
+        private final URL url;
+        private final Connection connection;
+        private final InputStream in;
+        private final int statusCode;
+        private final Map<String, String> headers;
+
+        long start;
+        long length;
+
+        // Bytes left in the body or the current chunk, -1 until closed.
+        long remaining;
+        boolean chunked = false;
+        boolean keepAlive = false;
+
+        int metaInterval = 0;
+        int untilMetadata = 0;
+
+        private boolean finished = false;
+
+        // Set by close(), which may come from another thread.
+        private volatile boolean closed = false;
+        private volatile String metadata;
+
+        Response(URL url, Connection connection, InputStream in, int statusCode, Map<String, String> headers)
+        {
+            this.url = url;
+            this.connection = connection;
+            this.in = in;
+            this.statusCode = statusCode;
+            this.headers = headers;
+        }
+
+        public URL getUrl()
+        {
+            return url;
+        }
+
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        /**
+         * @param name a header name, in any case
+         * @return the value, or null
+         */
+        public String getHeaderField(String name)
+        {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+
+        /**
+         * Returns the byte of the media the body starts at.
+         *
+         * @return the offset of the first byte
+         */
+        public long getStart()
+        {
+            return start;
+        }
+
+        /**
+         * Returns the length of the whole media, which a live stream doesn't
+         * have.
+         *
+         * @return the length, or -1 if it is unknown
+         */
+        public long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * Returns the metadata the server sent last, such as
+         * <code>StreamTitle='...';</code>.
+         *
+         * @return the metadata, or null
+         */
+        public String getMetadata()
+        {
+            return metadata;
+        }
+
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+
+            return read(one, 0, 1) == 1 ? one[0] & 0xff : -1;
+        }
+
+        public int read(byte[] buffer, int offset, int count) throws IOException
+        {
+            if (count == 0)
+            {
+                return 0;
+            }
+
+            if (metaInterval > 0)
+            {
+                if (untilMetadata == 0)
+                {
+                    readMetadata();
+                }
+
+                count = Math.min(count, untilMetadata);
+            }
+
+            int read = readBody(buffer, offset, count);
+
+            if (read > 0 && metaInterval > 0)
+            {
+                untilMetadata -= read;
+            }
+
+            return read;
+        }
+
+        /*
+         * After every metaInterval bytes of audio come a length byte, which
+         * is a sixteenth of the metadata length, and the metadata.
+         */
+        private void readMetadata() throws IOException
+        {
+            untilMetadata = metaInterval;
+
+            byte[] one = new byte[1];
+
+            if (readBodyFully(one, 0, 1) < 1)
+            {
+                return;
+            }
+
+            int size = (one[0] & 0xff) * 16;
+
+            if (size == 0)
+            {
+                return;
+            }
+
+            byte[] data = new byte[size];
+
+            if (readBodyFully(data, 0, size) < size)
+            {
+                return;
+            }
+
+            // Padded with zeros.
+            int end = size;
+
+            while (end > 0 && data[end - 1] == 0)
+            {
+                end--;
+            }
+
+            try
+            {
+                metadata = new String(data, 0, end, "UTF-8");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                metadata = new String(data, 0, end);
+            }
+
+            MetadataListener listener = metadataListener;
+
+            if (listener != null)
+            {
+                listener.metadataReceived(url, metadata);
+            }
+        }
+
+        void skipFully(long bytes) throws IOException
+        {
+            while (bytes > 0)
+            {
+                long skipped = skip(bytes);
+
+                if (skipped <= 0)
+                {
+                    throw new EOFException("Could not skip to " + start + " in " + url);
+                }
+
+                bytes -= skipped;
+            }
+        }
+
+        private int readBodyFully(byte[] buffer, int offset, int count) throws IOException
+        {
+            int got = 0;
+
+            while (got < count)
+            {
+                int read = readBody(buffer, offset + got, count - got);
+
+                if (read < 0)
+                {
+                    break;
+                }
+
+                got += read;
+            }
+
+            return got;
+        }
+
+        /*
+         * Reads the body as framed by the server: a known length, chunks, or
+         * until the connection closes.
+         */
+        private int readBody(byte[] buffer, int offset, int count) throws IOException
+        {
+            if (finished || closed)
+            {
+                return -1;
+            }
+
+            if (chunked && remaining <= 0)
+            {
+                if (!nextChunk())
+                {
+                    finish();
+                    return -1;
+                }
+            }
+
+            if (remaining >= 0)
+            {
+                count = (int) Math.min(count, remaining);
+            }
+
+            int read = in.read(buffer, offset, count);
+
+            if (read < 0)
+            {
+                if (remaining > 0)
+                {
+                    throw new EOFException("The body from " + url + " ended early.");
+                }
+
+                keepAlive = false;
+                finish();
+                return -1;
+            }
+
+            if (remaining >= 0)
+            {
+                remaining -= read;
+
+                if (remaining == 0 && !chunked)
+                {
+                    finish();
+                }
+            }
+
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException
+        {
+            // The line break after the chunk before.
+            if (remaining == 0)
+            {
+                readLine(in);
+            }
+
+            String line = readLine(in);
+
+            if (line == null)
+            {
+                throw new EOFException("The chunks from " + url + " ended early.");
+            }
+
+            int semicolon = line.indexOf(';');
+
+            try
+            {
+                remaining = Long.parseLong((semicolon >= 0 ? line.substring(0, semicolon) : line).trim(), 16);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Bad chunk size from " + url + ": " + line);
+            }
+
+            if (remaining > 0)
+            {
+                return true;
+            }
+
+            // The trailer ends with an empty line.
+            while ((line = readLine(in)) != null && line.length() > 0)
+            {
+            }
+
+            return false;
+        }
+
+        /*
+         * The body was read to its end, so the connection can take the next
+         * request.
+         */
+        void finish()
+        {
+            if (finished)
+            {
+                return;
+            }
+
+            finished = true;
+
+            if (connection != null && keepAlive && !closed)
+            {
+                putIdle(connection);
+            }
+        }
+
+        /**
+         * Closes the response. If the body was not read to its end, the
+         * connection is closed too, which also ends a read blocked on another
+         * thread.
+         */
+        public void close()
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            closed = true;
+
+            if (finished)
+            {
+                return;
+            }
+
+            if (connection != null)
+            {
+                connection.close();
+            }
+            else
+            {
+                try
+                {
+                    in.close();
+                }
+                catch (IOException e)
+                {
+                    Log.e(TAG, "Could not close " + url, e);
+                }
+            }
+        }
+    }
+}
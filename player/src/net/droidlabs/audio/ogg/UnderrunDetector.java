@@ -0,0 +1,191 @@
+package net.droidlabs.audio.ogg;
+
+import android.media.AudioTrack;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+
+/**
+ * Notices when an AudioTrack ran out of frames to play and makes its buffer
+ * larger for it.
+ * <p/>
+ * From API 24 on the track counts its underruns itself and its buffer can be
+ * resized while it plays, up to the capacity it was made with. Before that we
+ * look at the sink: if the track has played every frame written to it by the
+ * time the next ones come, it went silent in between. The larger buffer is
+ * then used for the next track. Both methods are looked up by reflection, so
+ * this builds against older SDKs.
+ */
+final class UnderrunDetector
+{
+    public static final String TAG = UnderrunDetector.class.getSimpleName();
+
+    // How far the buffer may grow beyond the size first asked for.
+    private static final int MAX_GROWTH = 8;
+
+    private static final Method GET_UNDERRUN_COUNT = trackMethod("getUnderrunCount");
+    private static final Method SET_BUFFER_SIZE_IN_FRAMES = trackMethod("setBufferSizeInFrames", int.class);
+
+    private volatile int underrunCount = 0;
+    private volatile int bufferFrames = 0;
+    private int maximumFrames = 0;
+
+    // Set for every track by attach().
+    private AudioTrack track;
+    private int trackUnderruns;
+
+    /**
+     * Returns how many frames to make the next track hold. That is the size
+     * asked for or the size the buffer grew to, and where the buffer can be
+     * resized, room to grow on top.
+     *
+     * @param frames the size the player asks for
+     * @return the capacity of the track in frames
+     */
+    int start(int frames)
+    {
+        if (maximumFrames == 0)
+        {
+            maximumFrames = frames * MAX_GROWTH;
+        }
+
+        bufferFrames = Math.max(bufferFrames, frames);
+
+        return SET_BUFFER_SIZE_IN_FRAMES != null ? Math.max(maximumFrames, bufferFrames) : bufferFrames;
+    }
+
+    /**
+     * Starts watching a track made with the capacity from <code>start()</code>.
+     *
+     * @param track the track
+     */
+    void attach(AudioTrack track)
+    {
+        this.track = track;
+        trackUnderruns = trackUnderrunCount();
+
+        if (SET_BUFFER_SIZE_IN_FRAMES != null)
+        {
+            resize(bufferFrames);
+        }
+    }
+
+    /**
+     * Called before every write to the track, on the thread that writes.
+     *
+     * @param writtenFrames the frames written since the track last started
+     *                      from empty
+     * @param playedFrames  how many of those the track has played
+     * @return true if the track ran dry since the last call
+     */
+    boolean check(long writtenFrames, long playedFrames)
+    {
+        boolean underrun;
+        int count = trackUnderrunCount();
+
+        if (count >= 0)
+        {
+            underrun = count > trackUnderruns;
+            trackUnderruns = count;
+        }
+        else
+        {
+            // Nothing written yet is a start, not a starved sink.
+            underrun = writtenFrames > 0 && playedFrames >= writtenFrames;
+        }
+
+        if (underrun)
+        {
+            underrunCount++;
+            grow();
+        }
+
+        return underrun;
+    }
+
+    /**
+     * Returns the number of underruns seen by this player, over every track.
+     *
+     * @return the count
+     */
+    int getUnderrunCount()
+    {
+        return underrunCount;
+    }
+
+    /**
+     * Returns the size the track buffer has grown to.
+     *
+     * @return the size in frames, 0 before the first track
+     */
+    int getBufferFrames()
+    {
+        return bufferFrames;
+    }
+
+    private void grow()
+    {
+        int frames = Math.min(bufferFrames * 2, maximumFrames);
+
+        if (frames <= bufferFrames)
+        {
+            return;
+        }
+
+        Log.d(TAG, "Underrun, growing the AudioTrack buffer from " + bufferFrames + " to " + frames + " frames.");
+
+        bufferFrames = frames;
+
+        if (SET_BUFFER_SIZE_IN_FRAMES != null)
+        {
+            resize(frames);
+        }
+    }
+
+    private void resize(int frames)
+    {
+        try
+        {
+            // The track may round the size or cap it at its capacity.
+            int actual = (Integer) SET_BUFFER_SIZE_IN_FRAMES.invoke(track, frames);
+
+            if (actual > 0)
+            {
+                bufferFrames = actual;
+            }
+        }
+        catch (Exception e)
+        {
+            Log.e(TAG, "Could not resize the AudioTrack buffer.", e);
+        }
+    }
+
+    private int trackUnderrunCount()
+    {
+        if (GET_UNDERRUN_COUNT == null)
+        {
+            return -1;
+        }
+
+        try
+        {
+            return (Integer) GET_UNDERRUN_COUNT.invoke(track);
+        }
+        catch (Exception e)
+        {
+            return -1;
+        }
+    }
+
+    private static Method trackMethod(String name, Class<?>... parameterTypes)
+    {
+        try
+        {
+            return AudioTrack.class.getMethod(name, parameterTypes);
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+}
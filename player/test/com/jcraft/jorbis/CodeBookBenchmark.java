@@ -0,0 +1,99 @@
+package com.jcraft.jorbis;
+
+import java.util.Random;
+
+import com.jcraft.jogg.Buffer;
+
+/**
+ * Compares compact lattice codebooks with the expanded valuelist they
+ * replace: the bytes each keeps per book, and the time decodev_add takes
+ * per decoded value. Not a unit test; run it by hand:
+ *
+ *   java -cp ... com.jcraft.jorbis.CodeBookBenchmark [seconds per book]
+ */
+public class CodeBookBenchmark{
+
+  // dim and entries of lattice books as the reference encoder makes them
+  private static final int[][] BOOKS={{2, 289}, {4, 81}, {4, 625}, {8, 6561}};
+
+  public static void main(String[] arg){
+    double seconds=arg.length>0 ? Double.parseDouble(arg[0]) : 1;
+
+    System.out.println(" dim entries  expanded B  compact B"
+        +"  expanded ns  compact ns");
+    for(int[] shape : BOOKS){
+      int dim=shape[0];
+      int entries=shape[1];
+      StaticCodeBook s=TestStreams.lattice(dim, entries, -1f, .5f, 5);
+
+      CodeBook compact=new CodeBook();
+      compact.init_decode(s);
+      CodeBook expanded=new CodeBook();
+      expanded.init_decode(s);
+      expanded.latticevals=null;
+      expanded.latticemap=null;
+      expanded.valuelist=s.unquantize();
+
+      byte[] packet=packet(compact, s, 1<<16);
+      int values=(1<<16)*dim;
+      float[] out=new float[values];
+
+      // both must decode the same values before their times mean anything
+      float[] check=new float[values];
+      Buffer opb=new Buffer();
+      opb.readinit(packet, packet.length);
+      expanded.decodev_add(out, 0, opb, values);
+      opb.readinit(packet, packet.length);
+      compact.decodev_add(check, 0, opb, values);
+      if(!java.util.Arrays.equals(out, check)){
+        throw new IllegalStateException("dim "+dim+" entries "+entries
+            +" decode differently");
+      }
+
+      time(expanded, packet, out, seconds/4);
+      time(compact, packet, out, seconds/4);
+      double e=time(expanded, packet, out, seconds)/values;
+      double c=time(compact, packet, out, seconds)/values;
+
+      System.out.println(String.format("%4d %7d %11d %10d %12.2f %11.2f",
+          dim, entries, expanded.valuelist.length*4,
+          compact.latticevals.length*4+compact.latticemap.length, e, c));
+    }
+  }
+
+  // random entries, coded as a residue packet codes them
+  private static byte[] packet(CodeBook book, StaticCodeBook s, int count){
+    book.codelist=CodeBook.make_words(s.lengthlist, s.entries);
+    Random random=new Random(count);
+    Buffer opb=new Buffer();
+    opb.writeinit();
+    for(int i=0; i<count; i++){
+      book.encode(random.nextInt(s.entries), opb);
+    }
+    byte[] packet=new byte[opb.bytes()];
+    System.arraycopy(opb.buffer(), 0, packet, 0, packet.length);
+    return packet;
+  }
+
+  // nanoseconds to decode the whole packet, best of five rounds
+  private static double time(CodeBook book, byte[] packet, float[] out,
+      double seconds){
+    Buffer opb=new Buffer();
+    long budget=(long)(seconds*1e9/5);
+    double best=Double.MAX_VALUE;
+    for(int round=0; round<5; round++){
+      long start=System.nanoTime();
+      long calls=0;
+      long elapsed;
+      do{
+        opb.readinit(packet, packet.length);
+        book.decodev_add(out, 0, opb, out.length);
+        calls++;
+        elapsed=System.nanoTime()-start;
+      }
+      while(elapsed<budget);
+      best=Math.min(best, (double)elapsed/calls);
+    }
+    return best;
+  }
+}
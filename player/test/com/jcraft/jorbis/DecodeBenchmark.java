@@ -0,0 +1,124 @@
+package com.jcraft.jorbis;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jcraft.jogg.Packet;
+import com.jcraft.jogg.Page;
+import com.jcraft.jogg.StreamState;
+import com.jcraft.jogg.SyncState;
+
+/**
+ * Times the packet decode path, synthesis and synthesis_blockin, on a
+ * stream from TestStreams, and counts the bytes it allocates per packet
+ * once warm. Not a unit test; run it by hand:
+ *
+ *   java -cp ... com.jcraft.jorbis.DecodeBenchmark [seconds]
+ */
+public class DecodeBenchmark{
+
+  public static void main(String[] arg){
+    double seconds=arg.length>0 ? Double.parseDouble(arg[0]) : 3;
+
+    Info vi=new Info();
+    Comment vc=new Comment();
+    List<Packet> packets=packets(TestStreams.vorbis(28, 2, 2000), vi, vc);
+
+    DspState vd=new DspState();
+    Block vb=new Block(vd);
+    float[][][] pcm=new float[1][][];
+    int[] index=new int[vi.channels];
+
+    // warm up, then decode the stream over and over until the time is up
+    for(int i=0; i<2; i++){
+      vd.synthesis_init(vi);
+      vb.init(vd);
+      decode(vd, vb, packets, pcm, index);
+    }
+
+    com.sun.management.ThreadMXBean threads=
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long thread=Thread.currentThread().getId();
+
+    long best=Long.MAX_VALUE;
+    long bytes=0;
+    long samples=0;
+    long end=System.nanoTime()+(long)(seconds*1e9);
+    while(System.nanoTime()<end){
+      // setting up allocates by design; only the packets are measured
+      vd.synthesis_init(vi);
+      vb.init(vd);
+      long allocated=threads.getThreadAllocatedBytes(thread);
+      long start=System.nanoTime();
+      samples=decode(vd, vb, packets, pcm, index);
+      best=Math.min(best, System.nanoTime()-start);
+      bytes=threads.getThreadAllocatedBytes(thread)-allocated;
+    }
+
+    System.out.println(String.format("%d packets, %d samples per channel",
+        packets.size(), samples));
+    System.out.println(String.format("%.0f ns per packet, %.1fx real time",
+        (double)best/packets.size(), samples/(double)vi.rate/(best/1e9)));
+    System.out.println(String.format("%.1f bytes allocated per packet",
+        (double)bytes/packets.size()));
+  }
+
+  // the audio packets of the stream, each in storage of its own
+  private static List<Packet> packets(byte[] stream, Info vi, Comment vc){
+    SyncState oy=new SyncState();
+    StreamState os=new StreamState();
+    Page og=new Page();
+    Packet op=new Packet();
+    List<Packet> packets=new ArrayList<Packet>();
+
+    int index=oy.buffer(stream.length);
+    System.arraycopy(stream, 0, oy.data, index, stream.length);
+    oy.wrote(stream.length);
+
+    vi.init();
+    vc.init();
+    int headers=0;
+    while(oy.pageout(og)==1){
+      if(headers==0){
+        os.init(og.serialno());
+      }
+      os.pagein(og);
+      while(os.packetout(op)==1){
+        if(headers<3){
+          vi.synthesis_headerin(vc, op);
+          headers++;
+          continue;
+        }
+        Packet copy=new Packet();
+        copy.packet_base=new byte[op.bytes];
+        System.arraycopy(op.packet_base, op.packet, copy.packet_base, 0,
+            op.bytes);
+        copy.bytes=op.bytes;
+        copy.granulepos=op.granulepos;
+        copy.packetno=op.packetno;
+        copy.e_o_s=op.e_o_s;
+        packets.add(copy);
+      }
+    }
+    return packets;
+  }
+
+  // samples per channel decoded from the packets, on a decoder set up
+  // for the stream
+  private static long decode(DspState vd, Block vb,
+      List<Packet> packets, float[][][] pcm, int[] index){
+    long samples=0;
+    for(int i=0; i<packets.size(); i++){
+      if(vb.synthesis(packets.get(i))==0){
+        vd.synthesis_blockin(vb);
+      }
+      int n;
+      while((n=vd.synthesis_pcmout(pcm, index))>0){
+        samples+=n;
+        vd.synthesis_read(n);
+      }
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,51 @@
+package com.jcraft.jorbis;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks FftMdct.backward against the reference Mdct.backward for every
+ * blocksize Vorbis allows, on random spectra.
+ */
+public class FftMdctTest{
+
+  // largest difference allowed, relative to the largest output sample
+  private static final float EPSILON=1e-5f;
+
+  @Test
+  public void matchesReferenceForAllBlocksizes(){
+    Random random=new Random(31);
+
+    for(int n=64; n<=8192; n*=2){
+      Mdct reference=new Mdct();
+      reference.init(n);
+      FftMdct fft=new FftMdct();
+      fft.init(n);
+
+      for(int k=0; k<8; k++){
+        float[] in=new float[n/2];
+        for(int i=0; i<in.length; i++){
+          // a spread of magnitudes, as decoded residue times floor gives
+          in[i]=(random.nextFloat()*2-1)*(float)Math.pow(10, random.nextInt(4)-2);
+        }
+
+        float[] expected=new float[n];
+        float[] actual=new float[n];
+        reference.backward(in.clone(), expected);
+        fft.backward(in.clone(), actual);
+
+        float peak=0;
+        float error=0;
+        for(int i=0; i<n; i++){
+          peak=Math.max(peak, Math.abs(expected[i]));
+          error=Math.max(error, Math.abs(expected[i]-actual[i]));
+        }
+        assertTrue("n="+n+" error "+error+" peak "+peak,
+            error<=EPSILON*Math.max(1.f, peak));
+      }
+    }
+  }
+}
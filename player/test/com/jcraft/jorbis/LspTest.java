@@ -0,0 +1,92 @@
+package com.jcraft.jorbis;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the run based Lsp.lsp_to_curve against the original one that
+ * works bin by bin, on random LSP vectors over the look Floor0 builds.
+ */
+public class LspTest{
+
+  private static final float EPSILON=1e-6f;
+
+  @Test
+  public void runsMatchPerBinCurve(){
+    Random random=new Random(30);
+    int[] orders={2, 7, 8, 9, 15, 16, 24, 31};
+    int[] blocksizes={64, 256, 2048, 8192};
+    int[] barkmaps={64, 128, 256};
+    int[] rates={8000, 22050, 44100, 48000};
+
+    for(int order : orders){
+      for(int blocksize : blocksizes){
+        for(int barkmap : barkmaps){
+          for(int rate : rates){
+            Floor0.LookFloor0 look=look(order, blocksize, barkmap, rate);
+            for(int k=0; k<4; k++){
+              check(look, random);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static Floor0.LookFloor0 look(int order, int blocksize, int barkmap,
+      int rate){
+    Info vi=new Info();
+    vi.channels=1;
+    vi.rate=rate;
+    vi.blocksizes[0]=blocksize;
+    vi.blocksizes[1]=blocksize;
+
+    DspState vd=new DspState();
+    vd.vi=vi;
+
+    Floor0 floor=new Floor0();
+    Floor0.InfoFloor0 info=floor.new InfoFloor0();
+    info.order=order;
+    info.rate=rate;
+    info.barkmap=barkmap;
+    info.ampbits=6;
+    info.ampdB=100;
+
+    return (Floor0.LookFloor0)floor.look(vd, new InfoMode(), info);
+  }
+
+  private static void check(Floor0.LookFloor0 look, Random random){
+    int m=look.m;
+    int n=look.n;
+
+    // LSP frequencies are increasing angles below pi, roughly evenly
+    // spread as an encoder leaves them; clumped ones take the curve out of
+    // the range of Lookup.invsq2explook
+    float[] lsp=new float[m];
+    for(int j=0; j<m; j++){
+      lsp[j]=(j+1+(random.nextFloat()-.5f)*.8f)*Lsp.M_PI/(m+1);
+    }
+    float amp=random.nextFloat()*look.vi.ampdB;
+
+    float[] expected=new float[n];
+    float[] actual=new float[n];
+    for(int i=0; i<n; i++){
+      expected[i]=actual[i]=random.nextFloat()*2-1;
+    }
+
+    // the per bin version takes the cosines of lsp in place
+    Lsp.lsp_to_curve(expected, look.linearmap, n, look.ln, lsp.clone(), m,
+        amp, look.vi.ampdB);
+    Lsp.lsp_to_curve(actual, look.runstart, look.cosw, look.runs, look.p,
+        look.q, lsp, m, amp, look.vi.ampdB);
+
+    for(int i=0; i<n; i++){
+      float tolerance=EPSILON*Math.max(1.f, Math.abs(expected[i]));
+      assertEquals("m="+m+" n="+n+" ln="+look.ln+" bin "+i, expected[i],
+          actual[i], tolerance);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.jcraft.jorbis;
+
+import java.util.Random;
+
+/**
+ * Times Mdct.backward and FftMdct.backward for every blocksize. Not a unit
+ * test; run it by hand:
+ *
+ *   java -cp ... com.jcraft.jorbis.MdctBenchmark [seconds per size]
+ */
+public class MdctBenchmark{
+
+  public static void main(String[] arg){
+    double seconds=arg.length>0 ? Double.parseDouble(arg[0]) : 1;
+
+    System.out.println("     n   reference ns   fft ns   speedup");
+    for(int n=64; n<=8192; n*=2){
+      Mdct reference=new Mdct();
+      reference.init(n);
+      FftMdct fft=new FftMdct();
+      fft.init(n);
+
+      float[] in=new float[n/2];
+      Random random=new Random(n);
+      for(int i=0; i<in.length; i++){
+        in[i]=random.nextFloat()*2-1;
+      }
+      float[] out=new float[n];
+
+      // warm up both before measuring either
+      time(reference, in, out, seconds/4);
+      time(fft, in, out, seconds/4);
+
+      double r=time(reference, in, out, seconds);
+      double f=time(fft, in, out, seconds);
+      System.out.println(String.format("%6d %14.0f %8.0f %9.2fx", n, r, f,
+          r/f));
+    }
+  }
+
+  // nanoseconds per call, best of five rounds
+  private static double time(Mdct mdct, float[] in, float[] out,
+      double seconds){
+    long budget=(long)(seconds*1e9/5);
+    double best=Double.MAX_VALUE;
+    for(int round=0; round<5; round++){
+      long start=System.nanoTime();
+      long calls=0;
+      long elapsed;
+      do{
+        for(int i=0; i<64; i++){
+          mdct.backward(in, out);
+        }
+        calls+=64;
+        elapsed=System.nanoTime()-start;
+      }
+      while(elapsed<budget);
+      best=Math.min(best, (double)elapsed/calls);
+    }
+    return best;
+  }
+}
@@ -0,0 +1,66 @@
+package com.jcraft.jorbis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes page indexes the way the seek index sidecar holds them and reads
+ * them back.
+ */
+public class PageIndexTest{
+
+  @Test
+  public void keepsEntriesFarApart() throws Exception{
+    // a gap of a day at 48 kHz and one of 3 GB, next to the usual ones
+    PageIndex index=new PageIndex(4096);
+    index.add(0, 0);
+    index.add(4000, 8192);
+    index.add(3L<<30, 24L*3600*48000);
+    index.add((3L<<30)+5000, 24L*3600*48000+4096);
+    index.add(Long.MAX_VALUE/2, Long.MAX_VALUE/2);
+    index.complete=true;
+
+    PageIndex copy=roundTrip(index);
+    assertEquals(index.spacing, copy.spacing);
+    assertEquals(index.complete, copy.complete);
+    assertEquals(index.entries, copy.entries);
+    for(int i=0; i<index.entries; i++){
+      assertEquals("granulepos "+i, index.granulepos[i], copy.granulepos[i]);
+      assertEquals("offset "+i, index.offset[i], copy.offset[i]);
+    }
+  }
+
+  @Test
+  public void storesSmallDeltasInFewBytes() throws Exception{
+    PageIndex index=new PageIndex(4096);
+    for(int i=0; i<1000; i++){
+      index.add(i*6000L, i*4096L);
+    }
+    // two bytes for each delta, after the header
+    assertTrue(bytes(index).length<=8+1+4+1000*4);
+
+    PageIndex copy=roundTrip(index);
+    assertEquals(1000, copy.entries);
+    for(int i=0; i<1000; i++){
+      assertEquals("offset "+i, index.offset[i], copy.offset[i]);
+    }
+  }
+
+  private static PageIndex roundTrip(PageIndex index) throws Exception{
+    return PageIndex.read(new DataInputStream(
+        new ByteArrayInputStream(bytes(index))));
+  }
+
+  private static byte[] bytes(PageIndex index) throws Exception{
+    ByteArrayOutputStream out=new ByteArrayOutputStream();
+    index.write(new DataOutputStream(out));
+    return out.toByteArray();
+  }
+}
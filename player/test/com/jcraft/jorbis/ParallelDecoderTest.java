@@ -0,0 +1,98 @@
+package com.jcraft.jorbis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Decodes TestStreams files with ParallelDecoder and checks the samples
+ * against one VorbisFile reading the file from the start.
+ */
+public class ParallelDecoderTest{
+
+  @Test
+  public void decodesLikeASequentialRead() throws Exception{
+    check(file(TestStreams.vorbis(40, 2, 1500)));
+  }
+
+  @Test
+  public void decodesAcrossLinks() throws Exception{
+    ByteArrayOutputStream chain=new ByteArrayOutputStream();
+    chain.write(TestStreams.vorbis(41, 2, 400));
+    chain.write(TestStreams.vorbis(42, 2, 300));
+    chain.write(TestStreams.vorbis(43, 2, 500));
+    check(file(chain.toByteArray()));
+  }
+
+  private static void check(File file) throws Exception{
+    VorbisFile vf=new VorbisFile(file.getPath());
+    long total=vf.pcm_total(-1);
+    float[][] expected=readAll(vf);
+    assertEquals("samples read", total, expected[0].length);
+
+    ParallelDecoder decoder=new ParallelDecoder(vf, 3);
+    try{
+      check(expected, decoder.decode(0, total), 0);
+
+      // ranges that start and end anywhere, some shorter than a segment
+      Random random=new Random(40);
+      for(int i=0; i<6; i++){
+        long begin=(long)(random.nextDouble()*total);
+        long end=begin+(long)(random.nextDouble()*(total-begin));
+        if(i%2==0){
+          end=Math.min(total, begin+random.nextInt(3*ParallelDecoder.MIN_SEGMENT));
+        }
+        check(expected, decoder.decode(begin, end), (int)begin);
+      }
+    }
+    finally{
+      decoder.close();
+      vf.close();
+    }
+  }
+
+  private static void check(float[][] expected, float[][] actual, int begin){
+    for(int i=0; i<expected.length; i++){
+      float[] range=Arrays.copyOfRange(expected[i], begin,
+          begin+actual[i].length);
+      assertArrayEquals("channel "+i+" from "+begin, range, actual[i], 0f);
+    }
+  }
+
+  // the whole file, one array per channel
+  private static float[][] readAll(VorbisFile vf){
+    int channels=vf.getInfo(-1).channels;
+    float[][] all=new float[channels][1<<16];
+    int length=0;
+    int n;
+    while((n=vf.readFloats(all, length, 1024))!=0){
+      length+=Math.max(n, 0);
+      if(all[0].length-length<1024){
+        for(int i=0; i<channels; i++){
+          all[i]=Arrays.copyOf(all[i], all[i].length*2);
+        }
+      }
+    }
+    for(int i=0; i<channels; i++){
+      all[i]=Arrays.copyOf(all[i], length);
+    }
+    return all;
+  }
+
+  private static File file(byte[] bytes) throws IOException{
+    File file=File.createTempFile("parallel", ".ogg");
+    file.deleteOnExit();
+    FileOutputStream out=new FileOutputStream(file);
+    out.write(bytes);
+    out.close();
+    return file;
+  }
+}
@@ -0,0 +1,101 @@
+package com.jcraft.jorbis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads a TestStreams file start to end through each of the public read
+ * calls and prints the samples per second each delivers and the bytes it
+ * allocates per call once warm. Not a unit test; run it by hand:
+ *
+ *   java -cp ... com.jcraft.jorbis.ReadBenchmark [seconds per call]
+ */
+public class ReadBenchmark{
+
+  private static final String[] CALLS={"readBytes 16 bit little endian",
+      "readBytes 16 bit big endian", "readBytes 8 bit unsigned",
+      "readShorts", "readFloats"};
+
+  // samples per channel read by the last pass
+  private static long passSamples;
+
+  public static void main(String[] arg) throws Exception{
+    double seconds=arg.length>0 ? Double.parseDouble(arg[0]) : 2;
+
+    File file=File.createTempFile("read", ".ogg");
+    file.deleteOnExit();
+    FileOutputStream out=new FileOutputStream(file);
+    out.write(TestStreams.vorbis(41, 2, 2000));
+    out.close();
+
+    VorbisFile vf=new VorbisFile(file.getPath());
+    byte[] bytes=new byte[8192];
+    short[] shorts=new short[4096];
+    float[][] floats=new float[2][2048];
+
+    com.sun.management.ThreadMXBean threads=
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long thread=Thread.currentThread().getId();
+
+    System.out.println("call                              Msamples/s"
+        +"  bytes/call");
+    for(int call=0; call<CALLS.length; call++){
+      // once to warm up, then passes until the time is up
+      pass(vf, call, bytes, shorts, floats);
+
+      long best=Long.MAX_VALUE;
+      long samples=0;
+      long allocated=0;
+      long calls=0;
+      long end=System.nanoTime()+(long)(seconds*1e9);
+      while(System.nanoTime()<end){
+        long before=threads.getThreadAllocatedBytes(thread);
+        long start=System.nanoTime();
+        calls=pass(vf, call, bytes, shorts, floats);
+        best=Math.min(best, System.nanoTime()-start);
+        allocated=threads.getThreadAllocatedBytes(thread)-before;
+        samples=passSamples;
+      }
+      System.out.println(String.format("%-33s %10.2f %11.1f", CALLS[call],
+          samples/(best/1e3), (double)allocated/calls));
+    }
+    vf.close();
+  }
+
+  // the calls a pass from the start took
+  private static long pass(VorbisFile vf, int call, byte[] bytes,
+      short[] shorts, float[][] floats) throws IOException{
+    if(vf.pcm_seek(0)!=0){
+      throw new IOException("Could not seek to the start.");
+    }
+    long samples=0;
+    long calls=0;
+    int n;
+    do{
+      switch(call){
+        case 0:
+          n=vf.readBytes(bytes, 0, bytes.length, false, true, 2)/4;
+          break;
+        case 1:
+          n=vf.readBytes(bytes, 0, bytes.length, true, true, 2)/4;
+          break;
+        case 2:
+          n=vf.readBytes(bytes, 0, bytes.length, false, false, 1)/2;
+          break;
+        case 3:
+          n=vf.readShorts(shorts, 0, shorts.length)/2;
+          break;
+        default:
+          n=vf.readFloats(floats, 0, floats[0].length);
+          break;
+      }
+      samples+=Math.max(n, 0);
+      calls++;
+    }
+    while(n>0);
+    passSamples=samples;
+    return calls;
+  }
+}
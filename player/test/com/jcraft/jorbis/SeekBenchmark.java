@@ -0,0 +1,68 @@
+package com.jcraft.jorbis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Seeks to random positions in a TestStreams file, reading a little after
+ * each seek as a scrubbing UI does, and prints the time and the bytes the
+ * thread allocated per seek once warm. Not a unit test; run it by hand:
+ *
+ *   java -cp ... com.jcraft.jorbis.SeekBenchmark [seconds]
+ */
+public class SeekBenchmark{
+
+  public static void main(String[] arg) throws Exception{
+    double seconds=arg.length>0 ? Double.parseDouble(arg[0]) : 3;
+
+    File file=File.createTempFile("seek", ".ogg");
+    file.deleteOnExit();
+    FileOutputStream out=new FileOutputStream(file);
+    out.write(TestStreams.vorbis(42, 2, 4000));
+    out.close();
+
+    VorbisFile vf=new VorbisFile(file.getPath());
+    long total=vf.pcm_total(-1);
+    short[] buffer=new short[1024];
+    Random random=new Random(42);
+
+    com.sun.management.ThreadMXBean threads=
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long thread=Thread.currentThread().getId();
+
+    // warm up, then measure batches of seeks until the time is up
+    seek(vf, total, buffer, random, 2000);
+
+    int batch=500;
+    long best=Long.MAX_VALUE;
+    long allocated=0;
+    long seeks=0;
+    long end=System.nanoTime()+(long)(seconds*1e9);
+    while(System.nanoTime()<end){
+      long before=threads.getThreadAllocatedBytes(thread);
+      long start=System.nanoTime();
+      seek(vf, total, buffer, random, batch);
+      best=Math.min(best, System.nanoTime()-start);
+      allocated+=threads.getThreadAllocatedBytes(thread)-before;
+      seeks+=batch;
+    }
+    vf.close();
+
+    System.out.println(String.format("%.0f ns per seek", (double)best/batch));
+    System.out.println(String.format("%.1f bytes allocated per seek",
+        (double)allocated/seeks));
+  }
+
+  private static void seek(VorbisFile vf, long total, short[] buffer,
+      Random random, int count){
+    for(int i=0; i<count; i++){
+      long position=(long)(random.nextDouble()*(total-1));
+      if(vf.pcm_seek(position)!=0){
+        throw new IllegalStateException("Could not seek to "+position);
+      }
+      vf.readShorts(buffer, 0, buffer.length);
+    }
+  }
+}
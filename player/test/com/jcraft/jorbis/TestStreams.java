@@ -0,0 +1,272 @@
+package com.jcraft.jorbis;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.jcraft.jogg.Buffer;
+import com.jcraft.jogg.Packet;
+import com.jcraft.jogg.Page;
+import com.jcraft.jogg.StreamState;
+
+/**
+ * Builds small Ogg Vorbis streams for tests that need a file to decode: real
+ * headers for a floor 1, residue 1 setup and audio packets whose floor and
+ * residue bits are random. They decode to noise, which is all a test of
+ * the transport or the player needs.
+ */
+public class TestStreams{
+
+  public static final int RATE=44100;
+
+  private static final int[] BLOCKSIZES={256, 2048};
+
+  private TestStreams(){
+  }
+
+  /**
+   * Returns a stream of <code>packets</code> audio packets. The same seed
+   * gives the same bytes.
+   */
+  public static byte[] vorbis(long seed, int channels, int packets){
+    Random random=new Random(seed);
+    Info vi=setup(channels);
+
+    ByteArrayOutputStream out=new ByteArrayOutputStream();
+    StreamState os=new StreamState();
+    os.init((int)seed);
+    Page og=new Page();
+
+    Buffer opb=new Buffer();
+    opb.writeinit();
+    vi.pack_info(opb);
+    Packet op=packet(opb, 0);
+    op.b_o_s=1;
+    os.packetin(op);
+
+    opb=new Buffer();
+    opb.writeinit();
+    opb.write(0x03, 8);
+    opb.write("vorbis".getBytes());
+    byte[] vendor="TestStreams".getBytes();
+    opb.write(vendor.length, 32);
+    opb.write(vendor);
+    opb.write(0, 32);
+    opb.write(1, 1);
+    os.packetin(packet(opb, 1));
+
+    opb=new Buffer();
+    opb.writeinit();
+    vi.pack_books(opb);
+    os.packetin(packet(opb, 2));
+
+    // audio starts on a page of its own
+    while(os.flush(og)!=0){
+      write(out, og);
+    }
+
+    int[] W=new int[packets];
+    for(int i=0; i<packets; i++){
+      W[i]=random.nextInt(3)==0 ? 0 : 1;
+    }
+
+    long granulepos=0;
+    for(int i=0; i<packets; i++){
+      opb=new Buffer();
+      opb.writeinit();
+      opb.write(0, 1);
+      opb.write(W[i], 1);
+      if(W[i]==1){
+        opb.write(i>0 ? W[i-1] : 0, 1);
+        opb.write(i<packets-1 ? W[i+1] : 0, 1);
+      }
+      for(int j=0; j<channels; j++){
+        opb.write(1, 1);
+        opb.write(random.nextInt(128), 7);
+        opb.write(random.nextInt(128), 7);
+        for(int k=0; k<4; k++){
+          opb.write(random.nextInt(64), 6);
+        }
+      }
+      // residue classifications and values
+      int bytes=(W[i]==1 ? 600 : 120)+random.nextInt(200);
+      for(int k=0; k<bytes; k++){
+        opb.write(random.nextInt(256), 8);
+      }
+
+      op=packet(opb, 3+i);
+      if(i>0){
+        granulepos+=BLOCKSIZES[W[i-1]]/4+BLOCKSIZES[W[i]]/4;
+      }
+      op.granulepos=granulepos;
+      if(i==packets-1){
+        op.e_o_s=1;
+      }
+      os.packetin(op);
+      while(os.pageout(og)!=0){
+        write(out, og);
+      }
+    }
+    while(os.flush(og)!=0){
+      write(out, og);
+    }
+    return out.toByteArray();
+  }
+
+  private static Info setup(int channels){
+    Info vi=new Info();
+    vi.init();
+    vi.channels=channels;
+    vi.rate=RATE;
+    vi.bitrate_nominal=128000;
+    vi.blocksizes[0]=BLOCKSIZES[0];
+    vi.blocksizes[1]=BLOCKSIZES[1];
+
+    // book 0 codes floor posts, book 1 residue partitions, book 2 residue
+    // values as 3^4 lattice vectors
+    StaticCodeBook[] books={flat(6), flat(1), lattice(4, 81, -1f, .5f, 2)};
+    vi.books=books.length;
+    vi.book_param=books;
+
+    vi.times=1;
+    vi.time_type=new int[]{0};
+    vi.time_param=new Object[]{""};
+
+    vi.floors=2;
+    vi.floor_type=new int[]{1, 1};
+    vi.floor_param=new Object[2];
+    vi.residues=2;
+    vi.residue_type=new int[]{1, 1};
+    vi.residue_param=new Object[2];
+    vi.maps=2;
+    vi.map_type=new int[]{0, 0};
+    vi.map_param=new Object[2];
+    vi.modes=2;
+    vi.mode_param=new InfoMode[2];
+
+    for(int w=0; w<2; w++){
+      int n=BLOCKSIZES[w]/2;
+
+      Floor1.InfoFloor1 floor=new Floor1().new InfoFloor1();
+      floor.partitions=2;
+      floor.class_dim[0]=2;
+      floor.class_subs[0]=0;
+      floor.class_subbook[0][0]=0;
+      floor.mult=2;
+      floor.postlist[0]=0;
+      floor.postlist[1]=n;
+      for(int k=0; k<4; k++){
+        floor.postlist[k+2]=(k+1)*n/5;
+      }
+      vi.floor_param[w]=floor;
+
+      Residue0.InfoResidue0 residue=new Residue0().new InfoResidue0();
+      residue.begin=0;
+      residue.end=n-n/8;
+      residue.grouping=16;
+      residue.partitions=2;
+      residue.groupbook=1;
+      residue.secondstages[0]=0;
+      residue.secondstages[1]=1;
+      residue.booklist[0]=2;
+      vi.residue_param[w]=residue;
+
+      Mapping0.InfoMapping0 mapping=new Mapping0().new InfoMapping0();
+      mapping.submaps=1;
+      if(channels>1){
+        mapping.coupling_steps=1;
+        mapping.coupling_mag[0]=0;
+        mapping.coupling_ang[0]=1;
+      }
+      mapping.timesubmap[0]=0;
+      mapping.floorsubmap[0]=w;
+      mapping.residuesubmap[0]=w;
+      vi.map_param[w]=mapping;
+
+      InfoMode mode=new InfoMode();
+      mode.blockflag=w;
+      mode.mapping=w;
+      vi.mode_param[w]=mode;
+    }
+    return vi;
+  }
+
+  // every entry the same length, no value mapping
+  private static StaticCodeBook flat(int bits){
+    StaticCodeBook book=new StaticCodeBook();
+    book.dim=1;
+    book.entries=1<<bits;
+    book.lengthlist=new int[book.entries];
+    Arrays.fill(book.lengthlist, bits);
+    return book;
+  }
+
+  // maptype 1 whose entries are every dim-tuple of the values 0 to
+  // entries^(1/dim)-1; the benchmarks build their books with it as well
+  static StaticCodeBook lattice(int dim, int entries, float min,
+      float delta, int quant){
+    StaticCodeBook book=new StaticCodeBook();
+    book.dim=dim;
+    book.entries=entries;
+    book.lengthlist=lengths(entries);
+    book.maptype=1;
+    book.q_min=pack(min);
+    book.q_delta=pack(delta);
+    book.q_quant=quant;
+    int values=(int)Math.round(Math.pow(entries, 1./dim));
+    book.quantlist=new int[values];
+    for(int i=0; i<values; i++){
+      book.quantlist[i]=i;
+    }
+    return book;
+  }
+
+  // a complete Huffman tree over n entries
+  private static int[] lengths(int n){
+    int k=Util.ilog2(n);
+    int[] lengths=new int[n];
+    int longer=2*(n-(1<<k));
+    for(int i=0; i<n; i++){
+      lengths[i]=i<n-longer ? k : k+1;
+    }
+    return lengths;
+  }
+
+  // the codebook float format, exact for m*2^e with m below 2^21
+  private static int pack(float value){
+    if(value==0){
+      return 0;
+    }
+    int sign=0;
+    if(value<0){
+      sign=0x80000000;
+      value=-value;
+    }
+    int exponent=0;
+    double mantissa=value;
+    while(mantissa>=(1<<21)){
+      mantissa/=2;
+      exponent++;
+    }
+    while(mantissa<(1<<20)){
+      mantissa*=2;
+      exponent--;
+    }
+    return sign|((exponent+20+768)<<21)|(int)mantissa;
+  }
+
+  private static Packet packet(Buffer opb, int packetno){
+    Packet op=new Packet();
+    op.packet_base=new byte[opb.bytes()];
+    System.arraycopy(opb.buffer(), 0, op.packet_base, 0, opb.bytes());
+    op.packet=0;
+    op.bytes=opb.bytes();
+    op.packetno=packetno;
+    return op;
+  }
+
+  private static void write(ByteArrayOutputStream out, Page og){
+    out.write(og.header_base, og.header, og.header_len);
+    out.write(og.body_base, og.body, og.body_len);
+  }
+}
@@ -0,0 +1,92 @@
+package com.jcraft.jorbis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads chained TestStreams files through VorbisFile, from a file and from a
+ * plain InputStream.
+ */
+public class VorbisFileTest{
+
+  @Test
+  public void readsChainedStreamWithoutSeeking() throws Exception{
+    // a stereo link after a mono one: the second link needs a new setup,
+    // though a stream that can't seek reads it into the same Info
+    ByteArrayOutputStream chain=new ByteArrayOutputStream();
+    chain.write(TestStreams.vorbis(1, 1, 200));
+    chain.write(TestStreams.vorbis(2, 2, 200));
+    chain.write(TestStreams.vorbis(3, 1, 200));
+    byte[] bytes=chain.toByteArray();
+
+    File file=file(bytes);
+
+    VorbisFile seekable=new VorbisFile(file.getPath());
+    long length=0;
+    for(int i=0; i<seekable.streams(); i++){
+      length+=seekable.pcm_total(i)*seekable.getInfo(i).channels;
+    }
+    short[] expected=readAll(seekable);
+    assertEquals("samples in the file", length, expected.length);
+    seekable.close();
+
+    VorbisFile stream=new VorbisFile(new ByteArrayInputStream(bytes), null, 0);
+    short[] actual=readAll(stream);
+    stream.close();
+
+    assertArrayEquals("samples", expected, actual);
+  }
+
+  @Test
+  public void findsTheSameLinksOnSeveralThreads() throws Exception{
+    ByteArrayOutputStream chain=new ByteArrayOutputStream();
+    for(int i=0; i<6; i++){
+      chain.write(TestStreams.vorbis(10+i, 1+i%2, 300+50*i));
+    }
+    File file=file(chain.toByteArray());
+
+    VorbisFile one=new VorbisFile(file.getPath(), null, 1);
+    VorbisFile four=new VorbisFile(file.getPath(), null, 4);
+    assertEquals("links", one.streams(), four.streams());
+    for(int i=0; i<one.streams(); i++){
+      assertEquals("serial number "+i, one.serialnumber(i), four.serialnumber(i));
+      assertEquals("bytes in "+i, one.raw_total(i), four.raw_total(i));
+      assertEquals("samples in "+i, one.pcm_total(i), four.pcm_total(i));
+    }
+    assertArrayEquals("samples", readAll(one), readAll(four));
+    one.close();
+    four.close();
+  }
+
+  // every sample the file decodes to, interleaved per link
+  private static short[] readAll(VorbisFile vf){
+    short[] all=new short[1<<16];
+    int length=0;
+    int n;
+    while((n=vf.readShorts(all, length, 1024))!=0){
+      length+=Math.max(n, 0);
+      if(all.length-length<1024){
+        all=Arrays.copyOf(all, all.length*2);
+      }
+    }
+    return Arrays.copyOf(all, length);
+  }
+
+  private static File file(byte[] bytes) throws IOException{
+    File file=File.createTempFile("chain", ".ogg");
+    file.deleteOnExit();
+    FileOutputStream out=new FileOutputStream(file);
+    out.write(bytes);
+    out.close();
+    return file;
+  }
+}
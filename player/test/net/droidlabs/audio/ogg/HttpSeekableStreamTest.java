@@ -0,0 +1,141 @@
+package net.droidlabs.audio.ogg;
+
+import com.jcraft.jorbis.TestStreams;
+import com.jcraft.jorbis.VorbisFile;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads and seeks in files served by a local HTTP server and compares what
+ * comes back with the files themselves.
+ */
+public class HttpSeekableStreamTest
+{
+    private TestServer server;
+    private File local;
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if (server != null)
+        {
+            server.close();
+        }
+
+        if (local != null)
+        {
+            local.delete();
+        }
+    }
+
+    @Test
+    public void readsTheBytesAtEverySeek() throws IOException
+    {
+        byte[] file = new byte[300 * 1000 + 17];
+        Random random = new Random(43);
+        random.nextBytes(file);
+        server = new TestServer(file);
+
+        HttpSeekableStream stream = new HttpSeekableStream(server.getUrl("/file"), 4096, 8);
+        assertEquals(file.length, stream.getLength());
+
+        for (int i = 0; i < 200; i++)
+        {
+            // Reads across block boundaries and past the end as well.
+            int position = random.nextInt(file.length + 100);
+            int length = 1 + random.nextInt(3 * 4096);
+            stream.seek(position);
+            assertEquals(position, stream.tell());
+
+            byte[] expected = Arrays.copyOfRange(file, Math.min(position, file.length), Math.min(position + length, file.length));
+            byte[] actual = readFully(stream, length);
+            assertArrayEquals("at " + position, expected, actual);
+        }
+
+        stream.seek(file.length);
+        assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void readingStraightOnFetchesBlocksAhead() throws IOException
+    {
+        byte[] file = new byte[64 * 4096];
+        new Random(1).nextBytes(file);
+        server = new TestServer(file);
+
+        HttpSeekableStream stream = new HttpSeekableStream(server.getUrl("/file"), 4096, 8);
+        assertArrayEquals(file, readFully(stream, file.length));
+
+        // Every request but the first fetches several blocks.
+        assertTrue("requests " + stream.getRequestCount(), stream.getRequestCount() < 64 / 2);
+        assertEquals(file.length, stream.getBytesFetched());
+    }
+
+    @Test
+    public void vorbisFileSeeksAsInTheLocalFile() throws Exception
+    {
+        byte[] file = TestStreams.vorbis(43, 2, 600);
+        server = new TestServer(file);
+        local = File.createTempFile("seek", ".ogg");
+        FileOutputStream out = new FileOutputStream(local);
+        out.write(file);
+        out.close();
+
+        HttpSeekableStream stream = new HttpSeekableStream(server.getUrl("/file.ogg"), 8192, 16);
+        VorbisFile remote = new VorbisFile(stream, null, 0);
+        VorbisFile expected = new VorbisFile(local.getPath());
+
+        assertTrue(remote.seekable());
+        assertEquals(expected.pcm_total(-1), remote.pcm_total(-1));
+
+        Random random = new Random(43);
+        short[] remoteSamples = new short[4096];
+        short[] expectedSamples = new short[4096];
+        int requests = stream.getRequestCount();
+
+        for (int i = 0; i < 30; i++)
+        {
+            long position = (long) (random.nextDouble() * (expected.pcm_total(-1) - 4096));
+            assertEquals(0, remote.pcm_seek(position));
+            assertEquals(0, expected.pcm_seek(position));
+            assertEquals(expected.pcm_tell(), remote.pcm_tell());
+
+            int count = expected.readShorts(expectedSamples, 0, expectedSamples.length);
+            assertEquals(count, remote.readShorts(remoteSamples, 0, remoteSamples.length));
+            assertArrayEquals("at " + position, Arrays.copyOf(expectedSamples, count), Arrays.copyOf(remoteSamples, count));
+        }
+
+        int perSeek = (stream.getRequestCount() - requests) / 30;
+        assertTrue("requests per seek " + perSeek, perSeek <= 8);
+    }
+
+    private static byte[] readFully(HttpSeekableStream stream, int length) throws IOException
+    {
+        byte[] buffer = new byte[length];
+        int got = 0;
+
+        while (got < length)
+        {
+            int count = stream.read(buffer, got, length - got);
+
+            if (count < 0)
+            {
+                break;
+            }
+
+            got += count;
+        }
+
+        return Arrays.copyOf(buffer, got);
+    }
+}
@@ -0,0 +1,153 @@
+package net.droidlabs.audio.ogg;
+
+import com.jcraft.jorbis.Comment;
+import com.jcraft.jorbis.Info;
+import com.jcraft.jorbis.TestStreams;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes many streams from a local server on a few threads and checks that
+ * every one of them comes out the same as a stream decoded on its own.
+ */
+public class MultiStreamDecoderTest
+{
+    private static final int STREAMS = 40;
+
+    private TestServer server;
+    private MultiStreamDecoder decoder;
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if (decoder != null)
+        {
+            decoder.close();
+        }
+
+        if (server != null)
+        {
+            server.close();
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void decodesManyStreamsLikeOne() throws Exception
+    {
+        server = new TestServer(TestStreams.vorbis(47, 2, 300));
+        server.setMetaint(8192);
+
+        Result expected = decode(1)[0];
+        assertNull(expected.failure);
+        assertTrue(expected.samples > 0);
+        assertNotNull(expected.metadata);
+
+        Result[] results = decode(STREAMS);
+
+        for (Result result : results)
+        {
+            assertNull(result.failure);
+            assertEquals(2, result.channels);
+            assertEquals(expected.samples, result.samples);
+            assertEquals(expected.checksum, result.checksum, 0);
+            assertEquals(expected.metadata, result.metadata);
+        }
+
+        assertEquals(0, decoder.getOpenStreamCount());
+    }
+
+    /*
+     * Opens the served stream n times at once and waits for all of them to
+     * end.
+     */
+    private Result[] decode(int n) throws Exception
+    {
+        if (decoder != null)
+        {
+            decoder.close();
+        }
+
+        decoder = new MultiStreamDecoder(2, 2);
+
+        final CountDownLatch ended = new CountDownLatch(n);
+        final ConcurrentHashMap<MultiStreamDecoder.Stream, Result> results = new ConcurrentHashMap<MultiStreamDecoder.Stream, Result>();
+
+        MultiStreamDecoder.Callback callback = new MultiStreamDecoder.Callback()
+        {
+            public void headerRead(MultiStreamDecoder.Stream stream, Info info, Comment comment)
+            {
+                result(stream).channels = info.channels;
+            }
+
+            public void samplesDecoded(MultiStreamDecoder.Stream stream, float[][] pcm, int[] index, int samples)
+            {
+                Result result = result(stream);
+
+                for (int channel = 0; channel < pcm.length; channel++)
+                {
+                    for (int i = 0; i < samples; i++)
+                    {
+                        // Weighted by position, so reordered samples show.
+                        result.checksum += pcm[channel][index[channel] + i] * ((result.samples + i) % 1009 + channel);
+                    }
+                }
+
+                result.samples += samples;
+            }
+
+            public void streamEnded(MultiStreamDecoder.Stream stream, IOException cause)
+            {
+                Result result = result(stream);
+                result.failure = cause;
+                result.metadata = stream.getMetadata();
+                ended.countDown();
+            }
+
+            private Result result(MultiStreamDecoder.Stream stream)
+            {
+                Result result = results.get(stream);
+
+                if (result == null)
+                {
+                    results.putIfAbsent(stream, new Result());
+                    result = results.get(stream);
+                }
+
+                return result;
+            }
+        };
+
+        for (int i = 0; i < n; i++)
+        {
+            decoder.open(server.getUrl("/live/" + i), callback);
+        }
+
+        assertTrue("streams still open " + ended.getCount(), ended.await(100, TimeUnit.SECONDS));
+        assertEquals(n, results.size());
+
+        return results.values().toArray(new Result[n]);
+    }
+
+    /*
+     * Written only by the decode task of its stream, which runs on one thread
+     * at a time, and read after the stream ended.
+     */
+    private static class Result
+    {
+        volatile int channels;
+        volatile long samples;
+        volatile double checksum;
+        volatile IOException failure;
+        volatile String metadata;
+    }
+}
@@ -0,0 +1,60 @@
+package net.droidlabs.audio.ogg;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Looks up the times of reads and of frames put into the PCM ring.
+ */
+public class ReceiveTimesTest
+{
+    @Test
+    public void findsTheReadThatCompletedAPage()
+    {
+        ReceiveTimes times = new ReceiveTimes();
+
+        // Reads ending at bytes 100, 200 and 300.
+        times.add(100, 1);
+        times.add(200, 2);
+        times.add(300, 3);
+
+        // Pages ending at 150 and 200 came with the second read, one
+        // ending at 250 with the third, and one at 301 hasn't come yet.
+        assertEquals(2, times.reached(150));
+        assertEquals(2, times.reached(200));
+        assertEquals(3, times.reached(250));
+        assertEquals(-1, times.reached(301));
+    }
+
+    @Test
+    public void findsTheLastFramesWritten()
+    {
+        ReceiveTimes times = new ReceiveTimes();
+
+        // Frames up to 1000 from a page received at 10, up to 2000 at 20.
+        times.add(1000, 10);
+        times.add(2000, 20);
+
+        assertEquals(-1, times.passed(999));
+        assertEquals(10, times.passed(1500));
+        assertEquals(-1, times.passed(1500));
+        assertEquals(20, times.passed(5000));
+    }
+
+    @Test
+    public void dropsTheOldestWhenFull()
+    {
+        ReceiveTimes times = new ReceiveTimes();
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            times.add(i, i);
+        }
+
+        // The last 128 are kept.
+        assertEquals(873, times.reached(1));
+        assertEquals(1000, times.passed(1000));
+        assertEquals(-1, times.reached(1));
+    }
+}
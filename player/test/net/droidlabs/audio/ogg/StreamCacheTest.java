@@ -0,0 +1,200 @@
+package net.droidlabs.audio.ogg;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Caches files served by a local server in a temporary directory.
+ */
+public class StreamCacheTest
+{
+    private final byte[] file = new byte[10000];
+    private File directory;
+    private TestServer server;
+    private StreamSource source;
+
+    public StreamCacheTest()
+    {
+        new Random(44).nextBytes(file);
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        directory.mkdir();
+
+        server = new TestServer(file);
+        source = new StreamSource();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        source.closeIdleConnections();
+        server.close();
+
+        for (File cached : directory.listFiles())
+        {
+            cached.delete();
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void mergesRanges() throws IOException
+    {
+        StreamCache cache = new StreamCache(directory, 100000, source);
+        URL url = server.getUrl("/file");
+
+        write(cache, url, 0, 100);
+        write(cache, url, 200, 300);
+        assertEquals(200, cache.getSize());
+        assertFalse(read(cache, url, 0, 300));
+
+        // Overlaps both ranges and fills the gap between them.
+        write(cache, url, 50, 250);
+        assertEquals(300, cache.getSize());
+        assertTrue(read(cache, url, 0, 300));
+
+        // Touches the end of the merged range without overlapping it.
+        write(cache, url, 400, 500);
+        write(cache, url, 300, 400);
+        assertEquals(500, cache.getSize());
+        assertTrue(read(cache, url, 0, 500));
+
+        // Already there: nothing is added.
+        write(cache, url, 100, 450);
+        assertEquals(500, cache.getSize());
+        assertFalse(read(cache, url, 400, 501));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntriesNotBeingRead() throws IOException
+    {
+        StreamCache cache = new StreamCache(directory, file.length * 5 / 2, source);
+        URL first = server.getUrl("/first");
+        URL second = server.getUrl("/second");
+        URL third = server.getUrl("/third");
+
+        // The oldest entry, but still open when the cache fills up.
+        InputStream reading = cache.open(first);
+        assertArrayEquals(file, readAll(reading));
+
+        assertArrayEquals(file, readAll(cache, second));
+        assertArrayEquals(file, readAll(cache, third));
+
+        assertEquals(file.length, cache.getLength(first));
+        assertEquals(-1, cache.getLength(second));
+        assertEquals(file.length, cache.getLength(third));
+        assertEquals(2 * file.length, cache.getSize());
+
+        reading.close();
+
+        // Now the first can go, and goes before the third.
+        assertArrayEquals(file, readAll(cache, second));
+        assertEquals(-1, cache.getLength(first));
+        assertEquals(file.length, cache.getLength(third));
+    }
+
+    @Test
+    public void keepsEntriesAcrossARestart() throws IOException
+    {
+        URL url = server.getUrl("/file");
+
+        StreamCache cache = new StreamCache(directory, 100000, source);
+        assertArrayEquals(file, readAll(cache, url));
+        cache.flush();
+
+        int requests = server.getRequestCount();
+        StreamCache reopened = new StreamCache(directory, 100000, source);
+
+        assertEquals(file.length, reopened.getLength(url));
+        assertEquals(file.length, reopened.getSize());
+        assertArrayEquals(file, readAll(reopened, url));
+        assertEquals(requests, server.getRequestCount());
+        assertEquals(0, reopened.getMissCount());
+    }
+
+    @Test
+    public void dropsAnEntryWhoseLengthChanged() throws IOException
+    {
+        StreamCache cache = new StreamCache(directory, 100000, source);
+        URL url = server.getUrl("/file");
+
+        cache.write(url, 0, file, 0, 500, 1000);
+        assertTrue(read(cache, url, 0, 500));
+
+        cache.write(url, 0, file, 0, 100, 2000);
+        assertEquals(2000, cache.getLength(url));
+        assertEquals(100, cache.getSize());
+        assertTrue(read(cache, url, 0, 100));
+        assertFalse(read(cache, url, 100, 200));
+    }
+
+    private void write(StreamCache cache, URL url, int start, int end) throws IOException
+    {
+        cache.write(url, start, file, start, end - start, file.length);
+    }
+
+    /*
+     * Reads bytes start to end from disk, and checks them if they are there.
+     */
+    private boolean read(StreamCache cache, URL url, int start, int end) throws IOException
+    {
+        byte[] bytes = new byte[end - start];
+
+        if (!cache.read(url, start, bytes, 0, bytes.length))
+        {
+            return false;
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(file, start, end), bytes);
+
+        return true;
+    }
+
+    private static byte[] readAll(StreamCache cache, URL url) throws IOException
+    {
+        InputStream in = cache.open(url);
+
+        try
+        {
+            return readAll(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1500];
+        int count;
+
+        while ((count = in.read(buffer, 0, buffer.length)) >= 0)
+        {
+            out.write(buffer, 0, count);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,338 @@
+package net.droidlabs.audio.ogg;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Opens streams from a local server that answers like an Icecast or
+ * Shoutcast server, and checks that only audio reaches the reader.
+ */
+public class StreamSourceTest
+{
+    private static final int METAINT = 1000;
+
+    // A PKCS12 key store in hex, password "testpass", holding a self-signed
+    // certificate for localhost that is valid until 2125.
+    private static final String KEY_STORE =
+            "308203fc020103308203a606092a864886f70d010701a0820397048203933082"
+            + "038f3082012606092a864886f70d010701a0820117048201133082010f308201"
+            + "0b060b2a864886f70d010c0a0102a081bd3081ba306606092a864886f70d0105"
+            + "0d3059303806092a864886f70d01050c302b04143cec0386f8668b8f9ac425c3"
+            + "b8f6e0bedec3ca2702022710020120300c06082a864886f70d02090500301d06"
+            + "0960864801650304012a0410df25504b245d3cc0487bcf2e438def1f0450e747"
+            + "bc73d18f90f090643d2742d29a55b76dbf1adc57c508a2ae06b44b8095209c50"
+            + "63606533719171e851a4b15b10cb0ae68b39139b84f71d882465a10cdfaf7a60"
+            + "d870051d92ec0d722ef69c7b34bb313c301706092a864886f70d010914310a1e"
+            + "080074006500730074302106092a864886f70d0109153114041254696d652031"
+            + "3739323430303731383033353082026106092a864886f70d010706a082025230"
+            + "82024e0201003082024706092a864886f70d010701306606092a864886f70d01"
+            + "050d3059303806092a864886f70d01050c302b0414cbda6d49ceef8b7f5846f0"
+            + "85d3e09419a3b6ff5e02022710020120300c06082a864886f70d02090500301d"
+            + "060960864801650304012a0410a02fe6cf822364dfaeda77ed5c16dd29808201"
+            + "d0ccfa57716e060f918e1ad70bafd16139cea0ba43e2988f76339221609306e7"
+            + "5719ce4391d700fda66729a2f87e85ac34f71f885749a315ac926ca93a513ef3"
+            + "52ed80765533dbedfa6bbf17af44780cc7f4cb95f4330db3db6d566fd126b73e"
+            + "23cee358d2b5b54242fc8a8f93e73e47c8553e1e23c91b403bf85c46bdf4d93e"
+            + "8997ce674a00efcbbe52d094d951e645c3c278399aca63017eed6f428d17d634"
+            + "d70d9be43a98ceb3de9d0d9225515c3eff6d602b4ccfb3cc17215aedb72a9dc2"
+            + "83039ad244948846582e155ac096ae82039cfd0c31b2b01cd49bf8929c61875a"
+            + "297aac1c9983949bfd97606941b8984a43f04a8977acecff1dac84d72dfdf512"
+            + "f5e0b18412d11f9433aff12c985f6e305aa23f31e5a10cd9104cf9a5e804b54a"
+            + "fbc59638699a3f5f3cb381538f869915dc6107e8a8aea97e42b033862dd4e172"
+            + "6243d74774f35bbe7b90654e11e1b0c458dc2f7ce10d8376d181319ede9181f7"
+            + "625b5f0ae6f5290f47662b2753033f58c8eb112f5d34e87a0ccaf7d1b51529bf"
+            + "9915ee88d59a3d04a9d144f1248ccf0ebc95fd03805920f361b7bd5cb2ebeb2f"
+            + "beed719ceaa93856dfff5bf33b54f438eb5bcaa37ccfe99c5bd003be4cdb3b47"
+            + "c25ef60eac0f452bb01bbf73f91b017e33304d3031300d060960864801650304"
+            + "02010500042057d36e655eb5db1d506413bf7aa3bf791ad4f128470021742dd3"
+            + "3ddee7ad5715041451481887bae400c49a1e90fc918c2fa45a9e169802022710";
+
+    private final byte[] file = new byte[20 * METAINT + 123];
+    private final List<String> metadata = new ArrayList<String>();
+    private TestServer server;
+    private StreamSource source;
+
+    public StreamSourceTest()
+    {
+        new Random(46).nextBytes(file);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        if (source != null)
+        {
+            source.closeIdleConnections();
+        }
+
+        if (server != null)
+        {
+            server.close();
+        }
+    }
+
+    @Test
+    public void takesIcyMetadataOutOfTheAudio() throws IOException
+    {
+        server = new TestServer(file);
+        server.setMetaint(METAINT);
+
+        StreamSource.Response response = open(server.getUrl("/live"));
+        assertArrayEquals(file, readAll(response));
+        response.close();
+
+        assertMetadata();
+        assertEquals(TestServer.metadata(19), response.getMetadata());
+    }
+
+    @Test
+    public void acceptsTheIcyStatusLine() throws IOException
+    {
+        server = new TestServer(file);
+        server.setMetaint(METAINT);
+        server.setIcyStatusLine(true);
+
+        StreamSource.Response response = open(server.getUrl("/live"));
+        assertEquals(200, response.getStatusCode());
+        assertArrayEquals(file, readAll(response));
+        response.close();
+
+        assertMetadata();
+    }
+
+    @Test
+    public void leavesTheAudioAloneWithoutIcyMetadata() throws IOException
+    {
+        server = new TestServer(file);
+        server.setMetaint(METAINT);
+
+        source = new StreamSource();
+        source.setIcyMetadata(false);
+        StreamSource.Response response = source.open(server.getUrl("/file"), 0);
+        assertArrayEquals(file, readAll(response));
+        response.close();
+
+        assertEquals(null, response.getMetadata());
+    }
+
+    @Test
+    public void readsChunkedBodies() throws IOException
+    {
+        server = new TestServer(file);
+        server.setChunked(true);
+
+        StreamSource.Response response = open(server.getUrl("/file"));
+        assertEquals(-1, response.getLength());
+        assertArrayEquals(file, readAll(response));
+        response.close();
+    }
+
+    @Test
+    public void opensRanges() throws IOException
+    {
+        server = new TestServer(file);
+
+        StreamSource.Response response = open(server.getUrl("/file"), 5000, 6000);
+        assertEquals(206, response.getStatusCode());
+        assertEquals(5000, response.getStart());
+        assertEquals(file.length, response.getLength());
+        assertArrayEquals(Arrays.copyOfRange(file, 5000, 6000), readAll(response));
+        response.close();
+
+        response = source.open(server.getUrl("/file"), file.length, -1);
+        assertEquals(416, response.getStatusCode());
+        response.close();
+    }
+
+    @Test
+    public void reusesConnections() throws IOException
+    {
+        server = new TestServer(file);
+
+        for (int i = 0; i < 5; i++)
+        {
+            StreamSource.Response response = open(server.getUrl("/file"));
+            assertArrayEquals(file, readAll(response));
+            response.close();
+        }
+
+        assertEquals(1, source.getConnectionsOpened());
+        assertEquals(4, source.getConnectionsReused());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test(expected = SocketTimeoutException.class, timeout = 10000)
+    public void timesOutOnAStalledStream() throws IOException
+    {
+        server = new TestServer(file);
+        server.setMetaint(METAINT);
+        server.stallNextResponse(2500, 5000);
+
+        source = new StreamSource();
+        source.setReadTimeout(200);
+        StreamSource.Response response = source.open(server.getUrl("/live"), 0);
+
+        try
+        {
+            readAll(response);
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+
+    @Test
+    public void checksTheHostOfHttpsCertificates() throws Exception
+    {
+        SSLContext sslContext = sslContext();
+        server = new TestServer(file, sslContext);
+
+        final AtomicReference<String> verifiedHost = new AtomicReference<String>();
+        source = new StreamSource();
+        source.setSslSocketFactory(sslContext.getSocketFactory());
+        source.setHostnameVerifier(new HostnameVerifier()
+        {
+            public boolean verify(String host, SSLSession session)
+            {
+                verifiedHost.set(host);
+                return false;
+            }
+        });
+
+        try
+        {
+            source.open(server.getUrl("/file"), 0).close();
+            fail("The certificate is for localhost, not 127.0.0.1");
+        }
+        catch (SSLPeerUnverifiedException e)
+        {
+            assertEquals("127.0.0.1", verifiedHost.get());
+        }
+
+        source.setHostnameVerifier(new HostnameVerifier()
+        {
+            public boolean verify(String host, SSLSession session)
+            {
+                return true;
+            }
+        });
+
+        StreamSource.Response response = source.open(server.getUrl("/file"), 0);
+        assertArrayEquals(file, readAll(response));
+        response.close();
+    }
+
+    private StreamSource.Response open(URL url) throws IOException
+    {
+        return open(url, 0, -1);
+    }
+
+    private StreamSource.Response open(URL url, long start, long end) throws IOException
+    {
+        if (source == null)
+        {
+            source = new StreamSource();
+            source.setMetadataListener(new StreamSource.MetadataListener()
+            {
+                public void metadataReceived(URL url, String text)
+                {
+                    metadata.add(text);
+                }
+            });
+        }
+
+        return source.open(url, start, end);
+    }
+
+    /*
+     * Every block of audio is followed by metadata; the empty ones say the
+     * title didn't change and are not reported.
+     */
+    private void assertMetadata()
+    {
+        List<String> expected = new ArrayList<String>();
+
+        for (int block = 0; block < file.length / METAINT; block++)
+        {
+            if (TestServer.metadata(block).length() > 0)
+            {
+                expected.add(TestServer.metadata(block));
+            }
+        }
+
+        assertEquals(expected, metadata);
+    }
+
+    /*
+     * Returns a context with the key of KEY_STORE that also trusts its
+     * certificate, for both ends of the connection.
+     */
+    private static SSLContext sslContext() throws GeneralSecurityException, IOException
+    {
+        char[] password = "testpass".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(new ByteArrayInputStream(hex(KEY_STORE)), password);
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    private static byte[] hex(String hex)
+    {
+        byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        int count;
+
+        while ((count = in.read(buffer, 0, buffer.length)) >= 0)
+        {
+            out.write(buffer, 0, count);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,433 @@
+package net.droidlabs.audio.ogg;
+
+import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLContext;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An HTTP server on a local port for the tests. It serves one file at every
+ * path, with Range requests and keep-alive, and when told to, the ways
+ * Shoutcast and Icecast servers differ from plain HTTP: the ICY status line
+ * and metadata mixed into the audio. It can also send chunked bodies, stall
+ * part way through a response, or send every response slowly. Given an
+ * SSLContext it speaks https instead.
+ */
+class TestServer
+{
+    private final byte[] file;
+    private final ThreadFactory threadFactory;
+    private final ServerSocket serverSocket;
+    private final String scheme;
+    private final List<Socket> sockets = new ArrayList<Socket>();
+
+    private volatile int metaint = 0;
+    private volatile boolean icyStatusLine = false;
+    private volatile boolean chunked = false;
+    private final AtomicLong stallAfter = new AtomicLong(-1);
+    private volatile int stallMillis = 0;
+    private volatile int paceBytes = 0;
+    private volatile int paceMillis = 0;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    TestServer(byte[] file) throws IOException
+    {
+        this(file, null, null);
+    }
+
+    /**
+     * Serves each connection on a thread from <code>threadFactory</code>, or
+     * on a daemon thread of its own if it is null.
+     */
+    TestServer(byte[] file, ThreadFactory threadFactory) throws IOException
+    {
+        this(file, null, threadFactory);
+    }
+
+    /**
+     * Serves https with the key and certificate of <code>sslContext</code>.
+     */
+    TestServer(byte[] file, SSLContext sslContext) throws IOException
+    {
+        this(file, sslContext, null);
+    }
+
+    private TestServer(byte[] file, SSLContext sslContext, ThreadFactory threadFactory) throws IOException
+    {
+        ServerSocketFactory factory = sslContext != null ? sslContext.getServerSocketFactory()
+                : ServerSocketFactory.getDefault();
+
+        this.file = file;
+        this.threadFactory = threadFactory;
+        this.serverSocket = factory.createServerSocket(0, 100, InetAddress.getByName("127.0.0.1"));
+        this.scheme = sslContext != null ? "https" : "http";
+
+        Thread thread = new Thread("TestServer")
+        {
+            public void run()
+            {
+                accept();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the metadata sent after the given block of audio, empty for
+     * every third one, as servers send when the title didn't change.
+     */
+    static String metadata(int block)
+    {
+        return block % 3 == 2 ? "" : "StreamTitle='Song " + block + "';";
+    }
+
+    URL getUrl(String path) throws IOException
+    {
+        return new URL(scheme + "://127.0.0.1:" + serverSocket.getLocalPort() + path);
+    }
+
+    /**
+     * Answers requests with <code>Icy-MetaData: 1</code> like a Shoutcast
+     * server, with metadata after every <code>metaint</code> bytes.
+     */
+    void setMetaint(int metaint)
+    {
+        this.metaint = metaint;
+    }
+
+    void setIcyStatusLine(boolean icyStatusLine)
+    {
+        this.icyStatusLine = icyStatusLine;
+    }
+
+    void setChunked(boolean chunked)
+    {
+        this.chunked = chunked;
+    }
+
+    /**
+     * Makes the next response stop sending after <code>bytes</code> bytes
+     * of the body, wait and then close the connection.
+     */
+    void stallNextResponse(long bytes, int millis)
+    {
+        stallMillis = millis;
+        stallAfter.set(bytes);
+    }
+
+    /**
+     * Makes every response send <code>bytes</code> bytes of the body, then
+     * wait <code>millis</code>, like a live stream.
+     */
+    void setPace(int bytes, int millis)
+    {
+        paceMillis = millis;
+        paceBytes = bytes;
+    }
+
+    int getRequestCount()
+    {
+        return requests.get();
+    }
+
+    int getConnectionCount()
+    {
+        return connections.get();
+    }
+
+    void close() throws IOException
+    {
+        serverSocket.close();
+
+        synchronized (sockets)
+        {
+            for (Socket socket : sockets)
+            {
+                socket.close();
+            }
+        }
+    }
+
+    private void accept()
+    {
+        while (true)
+        {
+            final Socket socket;
+
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch (IOException e)
+            {
+                return;
+            }
+
+            connections.incrementAndGet();
+
+            synchronized (sockets)
+            {
+                sockets.add(socket);
+            }
+
+            Runnable connection = new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        serve(socket);
+                    }
+                    catch (IOException e)
+                    {
+                        // The client went away.
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            socket.close();
+                        }
+                        catch (IOException e)
+                        {
+                            // Closed already.
+                        }
+                    }
+                }
+            };
+
+            if (threadFactory != null)
+            {
+                threadFactory.newThread(connection).start();
+            }
+            else
+            {
+                Thread thread = new Thread(connection, "TestServer connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException
+    {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+        while (true)
+        {
+            String requestLine = readLine(in);
+
+            if (requestLine == null)
+            {
+                return;
+            }
+
+            String range = null;
+            boolean icy = false;
+            boolean close = false;
+            String line;
+
+            while ((line = readLine(in)) != null && line.length() > 0)
+            {
+                String lower = line.toLowerCase(Locale.US);
+
+                if (lower.startsWith("range:"))
+                {
+                    range = line.substring(6).trim();
+                }
+                else if (lower.startsWith("icy-metadata:"))
+                {
+                    icy = line.substring(13).trim().equals("1");
+                }
+                else if (lower.startsWith("connection:"))
+                {
+                    close = lower.contains("close");
+                }
+            }
+
+            requests.incrementAndGet();
+
+            long start = 0;
+            long end = file.length;
+
+            if (range != null && range.startsWith("bytes="))
+            {
+                String[] bounds = range.substring(6).split("-", -1);
+                start = Long.parseLong(bounds[0]);
+
+                if (bounds[1].length() > 0)
+                {
+                    end = Math.min(end, Long.parseLong(bounds[1]) + 1);
+                }
+
+                if (start >= file.length)
+                {
+                    write(out, "HTTP/1.1 416 Range Not Satisfiable\r\n"
+                            + "Content-Range: bytes */" + file.length + "\r\n"
+                            + "Content-Length: 0\r\n\r\n");
+                    out.flush();
+                    continue;
+                }
+            }
+
+            long stall = stallAfter.getAndSet(-1);
+
+            if (icy && metaint > 0)
+            {
+                // A live stream: no length, no ranges, closed at the end.
+                write(out, (icyStatusLine ? "ICY 200 OK\r\n" : "HTTP/1.0 200 OK\r\n")
+                        + "Content-Type: application/ogg\r\n"
+                        + "icy-metaint: " + metaint + "\r\n\r\n");
+                sendWithMetadata(out, stall);
+                return;
+            }
+
+            if (chunked)
+            {
+                write(out, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+                sendChunked(out);
+            }
+            else
+            {
+                String status = range != null ? "HTTP/1.1 206 Partial Content\r\n"
+                        + "Content-Range: bytes " + start + "-" + (end - 1) + "/" + file.length + "\r\n"
+                        : "HTTP/1.1 200 OK\r\n";
+                write(out, status + "Content-Length: " + (end - start) + "\r\n\r\n");
+
+                if (stall >= 0 && stall < end - start)
+                {
+                    out.write(file, (int) start, (int) stall);
+                    out.flush();
+                    Thread.sleep(stallMillis);
+                    return;
+                }
+
+                send(out, (int) start, (int) (end - start));
+            }
+
+            out.flush();
+
+            if (close)
+            {
+                return;
+            }
+        }
+    }
+
+    private void send(OutputStream out, int start, int count) throws IOException, InterruptedException
+    {
+        int slice = paceBytes;
+
+        if (slice <= 0)
+        {
+            out.write(file, start, count);
+            return;
+        }
+
+        for (int position = start; position < start + count; position += slice)
+        {
+            out.write(file, position, Math.min(slice, start + count - position));
+            out.flush();
+            Thread.sleep(paceMillis);
+        }
+    }
+
+    private void sendWithMetadata(OutputStream out, long stall) throws IOException, InterruptedException
+    {
+        int position = 0;
+        int block = 0;
+
+        while (position < file.length)
+        {
+            int count = Math.min(metaint, file.length - position);
+
+            if (stall >= 0 && position + count > stall)
+            {
+                out.write(file, position, (int) stall - position);
+                out.flush();
+                Thread.sleep(stallMillis);
+                return;
+            }
+
+            out.write(file, position, count);
+            position += count;
+
+            if (count == metaint)
+            {
+                byte[] metadata = metadata(block++).getBytes("UTF-8");
+                int blocks = (metadata.length + 15) / 16;
+                out.write(blocks);
+                out.write(metadata);
+                out.write(new byte[blocks * 16 - metadata.length]);
+            }
+        }
+
+        out.flush();
+    }
+
+    private void sendChunked(OutputStream out) throws IOException
+    {
+        int position = 0;
+        int size = 1;
+
+        while (position < file.length)
+        {
+            // Sizes from 1 byte up, and an extension now and then.
+            int count = Math.min(file.length - position, size);
+            write(out, Integer.toHexString(count) + (size % 2 == 0 ? ";name=value" : "") + "\r\n");
+            out.write(file, position, count);
+            write(out, "\r\n");
+            position += count;
+            size = size * 3 % 7919 + 1;
+        }
+
+        write(out, "0\r\nX-Trailer: 1\r\n\r\n");
+    }
+
+    private static void write(OutputStream out, String text) throws IOException
+    {
+        out.write(text.getBytes("ISO-8859-1"));
+    }
+
+    private static String readLine(InputStream in) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = in.read()) != '\n')
+        {
+            if (c < 0)
+            {
+                return line.length() > 0 ? line.toString() : null;
+            }
+
+            if (c != '\r')
+            {
+                line.append((char) c);
+            }
+        }
+
+        return line.toString();
+    }
+}
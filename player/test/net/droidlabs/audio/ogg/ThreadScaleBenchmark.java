@@ -0,0 +1,130 @@
+package net.droidlabs.audio.ogg;
+
+import com.jcraft.jorbis.JOrbisException;
+import com.jcraft.jorbis.TestStreams;
+import com.jcraft.jorbis.VorbisFile;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens thousands of slow streams at once, each read and decoded on a thread
+ * of its own, as <code>playAsync</code> runs them, and compares platform
+ * threads with virtual ones. The streams come from a local server that sends
+ * a slice of the file and then pauses. Not a unit test; run it by hand on
+ * Java 21 or later for the virtual threads:
+ *
+ *   java -cp ... net.droidlabs.audio.ogg.ThreadScaleBenchmark
+ *       [streams] [platform|virtual] [slice bytes] [pause ms]
+ * <p/>
+ * The player itself needs an AudioTrack, which only a device has, so each
+ * stream does the player's blocking work without the output: open it through
+ * a <code>StreamSource</code> and decode it with <code>VorbisFile</code>.
+ */
+public class ThreadScaleBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String mode = args.length > 1 ? args[1] : "platform";
+        int slice = args.length > 2 ? Integer.parseInt(args[2]) : 8192;
+        int pause = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        ThreadFactory threadFactory = mode.equals("virtual") ? PlayerThreads.virtual("stream") : PlayerThreads.platform("stream");
+
+        if (threadFactory == null)
+        {
+            System.out.println("This runtime has no virtual threads.");
+            return;
+        }
+
+        // The server takes the same threads in both modes, so only the
+        // streams' threads differ.
+        TestServer server = new TestServer(TestStreams.vorbis(48, 2, 300), PlayerThreads.preferVirtual("server"));
+        server.setPace(slice, pause);
+        final URL url = server.getUrl("/stream.ogg");
+        final StreamSource source = new StreamSource();
+
+        final long expected = decode(source.open(url, 0));
+        final CountDownLatch done = new CountDownLatch(streams);
+        final AtomicInteger errors = new AtomicInteger();
+        Executor executor = PlayerThreads.threadPerTask(threadFactory);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < streams; i++)
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        if (decode(source.open(url, 0)) != expected)
+                        {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        errors.incrementAndGet();
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        long launched = System.nanoTime();
+        int peakThreads = 0;
+
+        while (!done.await(100, TimeUnit.MILLISECONDS))
+        {
+            peakThreads = Math.max(peakThreads, threads.getThreadCount());
+        }
+
+        long end = System.nanoTime();
+        server.close();
+
+        System.out.println(String.format("%s, %d streams of %d samples: launched in %.2f s, done in %.2f s, "
+                + "%d platform threads at most, %d errors", mode, streams, expected, (launched - start) / 1e9,
+                (end - start) / 1e9, peakThreads, errors.get()));
+        System.exit(0);
+    }
+
+    /*
+     * Returns the samples decoded from the response.
+     */
+    private static long decode(StreamSource.Response response) throws IOException, JOrbisException
+    {
+        try
+        {
+            VorbisFile vorbisFile = new VorbisFile(response, null, 0);
+            short[] buffer = new short[4096];
+            long samples = 0;
+            int count;
+
+            while ((count = vorbisFile.readShorts(buffer, 0, buffer.length)) != 0)
+            {
+                // -1 is a hole in the data, which a live stream may have.
+                samples += Math.max(count, 0);
+            }
+
+            return samples;
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+}